@@ -0,0 +1,46 @@
+/**
+ * The moves that can be applied to a game: one per key handled by Game, plus the clock tick.
+ */
+public enum Action
+{
+    /**
+     * Moves the block one spot to the left.
+     */
+    LEFT,
+    /**
+     * Moves the block one spot to the right.
+     */
+    RIGHT,
+    /**
+     * Flips the block vertically.
+     */
+    FLIP_VERTICAL,
+    /**
+     * Flips the block horizontally.
+     */
+    FLIP_HORIZONTAL,
+    /**
+     * Rotates the block 90 degrees clockwise.
+     */
+    ROTATE,
+    /**
+     * Scales the block down and penalizes the board.
+     */
+    SCALE_DOWN,
+    /**
+     * Scales the block up and rewards the board.
+     */
+    SCALE_UP,
+    /**
+     * Drops the block by one row.
+     */
+    DROP,
+    /**
+     * Advances the game clock: the block falls one row, or locks and a new block spawns.
+     */
+    TICK,
+    /**
+     * Drops the block straight to where it lands and locks it there.
+     */
+    HARD_DROP
+}
@@ -0,0 +1,179 @@
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the rotate and flip checks and transforms allocate nothing once they are warm.
+ * Every case is called until the JIT has compiled it and every orientation's bitmasks are cached,
+ * then the thread's allocation counter is read around a long run of calls.
+ * A case passes when a run counts no bytes; a run is repeated a few times before failing,
+ * since a one-off allocation by the JVM itself (a late compilation, for example) can land in any run,
+ * while an allocation on the call path shows up in every one.
+ */
+public class AllocationCheck
+{
+    /**
+     * One checked call.
+     */
+    private interface Op
+    {
+        /**
+         * Runs the call once.
+         * @return a value derived from the result, so the call cannot be optimized away.
+         */
+        int run();
+    }
+
+    /**
+     * Number of calls made before measuring.
+     */
+    private static final int WARMUP = 200_000;
+    /**
+     * Number of calls measured.
+     */
+    private static final int CALLS = 1_000_000;
+    /**
+     * Number of measured runs before a case fails.
+     */
+    private static final int RUNS = 3;
+    /**
+     * Thread bean used to read allocation counters.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    /**
+     * Sink for the results of every call.
+     */
+    private static int sink;
+    /**
+     * Number of cases that allocated.
+     */
+    private static int failures;
+
+    /**
+     * Runs the check and exits with status 1 if any case allocated, or 2 if allocations cannot be counted.
+     * @param args not used.
+     */
+    public static void main(String[] args)
+    {
+        if (THREADS == null) {
+            System.err.println("This JVM does not count allocated bytes per thread");
+            System.exit(2);
+        }
+        for (int i = 0; i < RUNS; i++) {
+            measure(() -> 0);
+        }
+        System.out.printf("%-40s %12s%n", "case", "bytes");
+        for (int size : new int[] {3, 12, 48, 70}) {
+            Board board = board(200, 256);
+            Block block = new Block(0, (256 - size) / 2, size, (byte) 3, new SplittableRandom(size));
+            String params = " size=" + size;
+            check("Tetris.canRotate" + params, () -> Tetris.canRotate(board, block) ? 1 : 0);
+            check("Tetris.canflipVertical" + params, () -> Tetris.canflipVertical(board, block) ? 1 : 0);
+            check("Tetris.canflipHorizontal" + params, () -> Tetris.canflipHorizontal(board, block) ? 1 : 0);
+            check("Block.rotate" + params, () -> {
+                block.rotate();
+                return Tetris.canRotate(board, block) ? 1 : 0;
+            });
+            check("Block.flipVertical" + params, () -> {
+                block.flipVertical();
+                return Tetris.canflipVertical(board, block) ? 1 : 0;
+            });
+            check("Block.flipHorizontal" + params, () -> {
+                block.flipHorizontal();
+                return Tetris.canflipHorizontal(board, block) ? 1 : 0;
+            });
+        }
+        System.out.println(failures == 0 ? "OK" : failures + " cases allocated");
+        if (sink == 42) {
+            System.out.println();
+        }
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Warms up one case, then counts the bytes it allocates over runs of many calls until a run counts none.
+     * @param name the name of the case.
+     * @param op the call.
+     */
+    private static void check(String name, Op op)
+    {
+        for (int i = 0; i < WARMUP; i++) {
+            sink += op.run();
+        }
+        long bytes = 0;
+        for (int run = 0; run < RUNS; run++) {
+            bytes = measure(op);
+            if (bytes <= 0) {
+                break;
+            }
+        }
+        if (bytes > 0) {
+            failures++;
+        }
+        System.out.printf("%-40s %12d%s%n", name, Math.max(bytes, 0), bytes > 0 ? "  FAIL" : "");
+    }
+
+    /**
+     * Counts the bytes allocated by one run of calls.
+     * The counter is read the same way around nothing first, so its own cost is not charged to the call.
+     * main() measures an empty call a few times before any case, so that compiling this loop is not charged either.
+     * @param op the call.
+     * @return the bytes allocated by the run.
+     */
+    private static long measure(Op op)
+    {
+        long overhead = allocated();
+        overhead = allocated() - overhead;
+        long start = allocated();
+        for (int i = 0; i < CALLS; i++) {
+            sink += op.run();
+        }
+        return allocated() - start - overhead;
+    }
+
+    /**
+     * Builds a board whose top third is empty and whose other rows are about 70% full.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @return the board.
+     */
+    private static Board board(int height, int width)
+    {
+        Board board = new Board(height, width);
+        SplittableRandom rand = new SplittableRandom(1);
+        for (int y = height / 3; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (rand.nextInt(10) < 7) {
+                    board.setTile(y, x, Tile.of((byte) (1 + rand.nextInt(Engine.COLORS - 1))));
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Reads the number of bytes allocated so far by the current thread.
+     * @return the allocated bytes.
+     */
+    private static long allocated()
+    {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Looks up the thread bean that can count allocated bytes.
+     * @return the bean, or null if the JVM does not provide one.
+     */
+    private static com.sun.management.ThreadMXBean threads()
+    {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        }
+        return null;
+    }
+}
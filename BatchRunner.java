@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Plays many independent headless games in parallel and reports their combined statistics.
+ * Game i of a batch is seeded from the batch seed and i alone, so any game can be replayed on its own:
+ * its blocks are those of new Engine(height, width, seed), the same ones ReplayRecorder and Replayer draw,
+ * and play() repeats its actions as well. Every game draws from its own generators, so workers never contend on a shared one.
+ * Games are played in fixed-size shards; every shard counts into its own GameStats and
+ * merges it into the running total once, so workers share nothing while they play.
+ */
+public class BatchRunner
+{
+    /**
+     * How the shards of a batch are scheduled.
+     */
+    public enum Mode
+    {
+        /**
+         * Shards are split recursively over a ForkJoinPool with the requested parallelism.
+         */
+        FORK_JOIN,
+        /**
+         * Every shard gets its own virtual thread, with at most the requested parallelism running at once.
+         * On JVMs without virtual threads a platform thread pool of that size is used instead.
+         */
+        VIRTUAL_THREADS
+    }
+
+    /**
+     * Number of games played by one task before its statistics are merged.
+     */
+    private static final int SHARD = 64;
+    /**
+     * The height of every board.
+     */
+    private int height;
+    /**
+     * The width of every board.
+     */
+    private int width;
+    /**
+     * The policy that plays every game.
+     */
+    private Policy policy;
+    /**
+     * The most actions applied to one game before it is abandoned.
+     */
+    private long maxSteps;
+
+    /**
+     * Constructs a runner for games of one board size played by one policy.
+     * @param height the height of every board.
+     * @param width the width of every board.
+     * @param policy the policy that chooses every action.
+     * @param maxSteps the most actions applied to one game before it is abandoned.
+     */
+    public BatchRunner(int height, int width, Policy policy, long maxSteps) {
+        this.height = height;
+        this.width = width;
+        this.policy = policy;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Plays a batch of games and returns their combined statistics.
+     * @param seed the batch seed.
+     * @param games the number of games to play.
+     * @param mode how to schedule the games.
+     * @param parallelism the number of games played at once.
+     * @return the statistics of the whole batch.
+     * @throws IllegalStateException if a game fails or the run is interrupted.
+     */
+    public GameStats run(long seed, int games, Mode mode, int parallelism) {
+        return run(seed, games, mode, parallelism, null);
+    }
+
+    /**
+     * Plays a batch of games and returns their combined statistics,
+     * reporting the running total every time a shard of games finishes.
+     * @param seed the batch seed.
+     * @param games the number of games to play.
+     * @param mode how to schedule the games.
+     * @param parallelism the number of games played at once.
+     * @param progress receives a copy of the running total after each shard, or null.
+     * @return the statistics of the whole batch.
+     * @throws IllegalStateException if a game fails or the run is interrupted.
+     */
+    public GameStats run(long seed, int games, Mode mode, int parallelism, Consumer<GameStats> progress) {
+        GameStats total = new GameStats();
+        if (mode == Mode.FORK_JOIN) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new Shards(seed, 0, games, total, progress));
+            } catch (RuntimeException | Error e) {
+                throw new IllegalStateException("Game shard failed", e);
+            } finally {
+                pool.shutdown();
+            }
+            return total;
+        }
+
+        ExecutorService executor = virtualThreads(parallelism);
+        Semaphore running = new Semaphore(parallelism);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int from = 0; from < games; from += SHARD) {
+                int first = from;
+                int last = Math.min(from + SHARD, games);
+                futures.add(executor.submit(() -> {
+                    running.acquireUninterruptibly();
+                    try {
+                        publish(total, playShard(seed, first, last), progress);
+                    } finally {
+                        running.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game shard failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return total;
+    }
+
+    /**
+     * Plays one game to its end or to the step limit.
+     * @param seed the seed of this game.
+     * @param stats receives the result of the game.
+     */
+    public void play(long seed, GameStats stats) { // O(max_steps * board_size / 64)
+        Engine engine = new Engine(height, width, seed);
+        SplittableRandom rand = new SplittableRandom(mix(seed));
+        long steps = 0;
+        while (!engine.isGameOver() && steps < maxSteps) {
+            engine.step(policy.next(engine, rand));
+            steps++;
+        }
+        stats.add(engine, steps);
+    }
+
+    /**
+     * Derives the seed of one game of a batch.
+     * @param seed the batch seed.
+     * @param game the index of the game in the batch.
+     * @return the seed of the game.
+     */
+    public static long seedFor(long seed, long game) { // O(1)
+        return mix(seed + game * 0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Plays a contiguous range of games of a batch.
+     * @param seed the batch seed.
+     * @param from the first game index.
+     * @param to the game index after the last one.
+     * @return the statistics of the range.
+     */
+    private GameStats playShard(long seed, int from, int to) {
+        GameStats stats = new GameStats();
+        for (int i = from; i < to; i++) {
+            play(seedFor(seed, i), stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Merges a finished shard into the running total and reports it.
+     * @param total the running total.
+     * @param part the statistics of the finished shard.
+     * @param progress receives a copy of the running total, or null.
+     */
+    private static void publish(GameStats total, GameStats part, Consumer<GameStats> progress) {
+        GameStats snapshot;
+        synchronized (total) {
+            total.merge(part);
+            snapshot = progress == null ? null : total.copy();
+        }
+        if (snapshot != null) {
+            progress.accept(snapshot);
+        }
+    }
+
+    /**
+     * Scrambles a seed so that neighbouring seeds give unrelated games (the SplitMix64 finalizer).
+     * @param z the value to scramble.
+     * @return the scrambled value.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task,
+     * or a fixed pool of platform threads on JVMs that have no virtual threads.
+     * @param parallelism the size of the fallback pool.
+     * @return the executor.
+     */
+    private static ExecutorService virtualThreads(int parallelism) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    /**
+     * A range of games that splits itself in half until it is one shard long.
+     * ForkJoinTask is Serializable, but these tasks never leave the pool that runs them.
+     */
+    @SuppressWarnings("serial")
+    private class Shards extends RecursiveAction
+    {
+        /**
+         * The batch seed.
+         */
+        private long seed;
+        /**
+         * The first game index.
+         */
+        private int from;
+        /**
+         * The game index after the last one.
+         */
+        private int to;
+        /**
+         * The running total.
+         */
+        private GameStats total;
+        /**
+         * Receives a copy of the running total after each shard, or null.
+         */
+        private Consumer<GameStats> progress;
+
+        /**
+         * Constructs the task for a range of games.
+         * @param seed the batch seed.
+         * @param from the first game index.
+         * @param to the game index after the last one.
+         * @param total the running total.
+         * @param progress receives a copy of the running total after each shard, or null.
+         */
+        Shards(long seed, int from, int to, GameStats total, Consumer<GameStats> progress) {
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+            this.total = total;
+            this.progress = progress;
+        }
+
+        /**
+         * Plays the range, or splits it and plays both halves in parallel.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= SHARD) {
+                publish(total, playShard(seed, from, to), progress);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Shards(seed, from, middle, total, progress), new Shards(seed, middle, to, total, progress));
+        }
+    }
+
+    /**
+     * Measures how the batch throughput scales with the number of cores.
+     * @param args the number of games, and optionally the board height, width and step limit.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 1 && args.length != 4)
+        {
+            System.err.println("Usage: java BatchRunner <games> [<height> <width> <maxSteps>]");
+            return;
+        }
+        int games = Integer.parseInt(args[0]);
+        int height = args.length == 4 ? Integer.parseInt(args[1]) : 20;
+        int width = args.length == 4 ? Integer.parseInt(args[2]) : 10;
+        long maxSteps = args.length == 4 ? Long.parseLong(args[3]) : 100000;
+        BatchRunner runner = new BatchRunner(height, width, Policy.RANDOM, maxSteps);
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        runner.run(1, Math.min(games, 4 * SHARD), Mode.FORK_JOIN, cores);
+        for (Mode mode : Mode.values()) {
+            double base = 0;
+            for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(threads * 2, cores)) {
+                long start = System.nanoTime();
+                GameStats stats = runner.run(42, games, mode, threads);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                double rate = games / seconds;
+                if (threads == 1) {
+                    base = rate;
+                }
+                System.out.printf("%-15s threads=%-3d games/s=%-10.1f speedup=%-5.2f efficiency=%3.0f%%  %s%n",
+                    mode, threads, rate, rate / base, 100 * rate / base / threads, stats);
+            }
+        }
+    }
+}
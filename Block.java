@@ -1,12 +1,38 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
 /**
  * A class representing a block in the Tetris game.
+ * A block with a Journal (see setJournal()) records its moves, transforms and tile writes so they can be undone.
  */
 public class Block
 {
     /**
-     * The internal storage of the block data.
+     * Cell value that marks an empty cell; colors index the palette, so they are never negative.
+     */
+    private static final byte EMPTY = -1;
+    /**
+     * Orientation bit: rows and columns of the stored tiles are swapped.
+     */
+    private static final int TRANSPOSE = 1;
+    /**
+     * Orientation bit: rows of the stored tiles are read bottom to top, after any transpose.
+     */
+    private static final int REVERSE_ROWS = 2;
+    /**
+     * Orientation bit: columns of the stored tiles are read right to left, after any transpose.
      */
-    private DynamicArray<DynamicArray<Tile>> block;
+    private static final int REVERSE_COLUMNS = 4;
+    /**
+     * The internal storage of the block data: the color of every cell, or EMPTY, as laid out before any transform.
+     */
+    private ByteGrid block;
+    /**
+     * Which of the 8 orientations of the stored tiles the block shows, as a set of the orientation bits.
+     * Rotating or flipping the block only changes this value.
+     */
+    private int orientation;
     /**
      * The x-coordinate of the top left of the block.
      */
@@ -19,6 +45,50 @@ public class Block
      * Value to hold the color of the block.
      */
     private byte color;
+    /**
+     * Per-row occupancy bitmasks of the block in each of its 8 orientations, built on demand; null until first needed.
+     */
+    private long[][][] orientations;
+    /**
+     * Bit o is set when orientations[o] describes the current tiles.
+     */
+    private int orientationsBuilt;
+    /**
+     * Whether tiles, top, bottom, left and right describe the current tiles.
+     */
+    private boolean boundsValid;
+    /**
+     * Number of tiles in the block.
+     */
+    private int tiles;
+    /**
+     * First row holding a tile, or the block size if there is none.
+     */
+    private int top;
+    /**
+     * Last row holding a tile, or -1 if there is none.
+     */
+    private int bottom;
+    /**
+     * First column holding a tile, or the block size if there is none.
+     */
+    private int left;
+    /**
+     * Last column holding a tile, or -1 if there is none.
+     */
+    private int right;
+    /**
+     * Lowest row holding a tile in every column, or -1 for empty columns; null until first needed.
+     */
+    private int[] skirt;
+    /**
+     * Whether skirt describes the current tiles.
+     */
+    private boolean skirtValid;
+    /**
+     * Where changes are recorded so they can be undone, or null if they are not recorded.
+     */
+    private Journal journal;
 
     /**
      * Constructs a block with the specified top-left coordinates and size.
@@ -29,50 +99,84 @@ public class Block
      * @param size the size of the block.
      */
     public Block(int jellyTime, int peanutButter, int size) { // this contructor creates a 2D placeholder of null values; these values will be populated later with calls to setTile() -- O(block_size)
-        block = new DynamicArray<>(size);
-        for (int i = 0; i < size; i++) {
-            DynamicArray<Tile> row = new DynamicArray<>(size);
-            for (int j = 0; j < size; j++) {
-                row.set(j, null);
-            }
-            block.set(i, row);
-        }
+        block = new ByteGrid(size, size);
+        block.fill(EMPTY);
         this.jellyTime = jellyTime;
         this.peanutButter = peanutButter;
     }
 
     /**
      * Constructs a block with the specified top-left coordinates, size, and color.
-     * This constructor creates a 2D matrix with actual tile objects.
+     * This constructor creates a 2D matrix with actual tiles.
      * @param jellyTime the top-left y-coordinate of the block.
      * @param peanutButter the top-left x-coordinate of the block.
      * @param size the size of the block.
      * @param color the color of the block.
      */
     public Block(int jellyTime, int peanutButter, int size, byte color) { // overloaded constructor that creates a 2D matrix with actual tile objects; no need to call setTile afterwards -- O(block_size)
-        block = new DynamicArray<>(size);
+        this(jellyTime, peanutButter, size, color, ThreadLocalRandom.current());
+    }
+
+    /**
+     * Constructs a block with the specified top-left coordinates, size, and color,
+     * drawing its shape from the given random source so that games can be replayed from a seed.
+     * Every cell holds a tile with probability 1/2; the cells take their bits from one nextLong() draw per 64 cells.
+     * @param jellyTime the top-left y-coordinate of the block.
+     * @param peanutButter the top-left x-coordinate of the block.
+     * @param size the size of the block.
+     * @param color the color of the block.
+     * @param rand the random source that decides which cells hold a tile.
+     */
+    public Block(int jellyTime, int peanutButter, int size, byte color, RandomGenerator rand) { // O(block_size)
+        block = new ByteGrid(size, size);
+        long shape = 0;
+        int cell = 0;
         for (int i = 0; i < size; i++) {
-            DynamicArray<Tile> row = new DynamicArray<>(size);
-            for (int j = 0; j < size; j++) {
-                if (Math.random() < 0.5) {
-                    row.set(j, new Tile(color));
-                } else {
-                    row.set(j, null);
+            for (int j = 0; j < size; j++, cell++) {
+                if ((cell & 63) == 0) {
+                    shape = rand.nextLong();
                 }
+                block.set(i, j, (shape & (1L << cell)) != 0 ? color : EMPTY);
             }
-            block.set(i, row);
         }
         this.jellyTime = jellyTime;
         this.peanutButter = peanutButter;
         this.color = color;
     }
 
+    /**
+     * Copies the block: an independent block with the same position, tiles and orientation.
+     * Nothing cached is copied, so the copy can be handed to another thread.
+     * @return the copy.
+     */
+    public Block copy() { // O(block_size)
+        int size = block.getHeight();
+        Block copy = new Block(jellyTime, peanutButter, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                copy.block.set(i, j, block.get(i, j));
+            }
+        }
+        copy.orientation = orientation;
+        copy.color = color;
+        return copy;
+    }
+
+    /**
+     * Starts or stops recording the changes made to the block.
+     * Blocks made by scaleUp() and scaleDown() record into the same journal; copies do not.
+     * @param journal where to record changes, or null to stop recording.
+     */
+    public void setJournal(Journal journal) { // O(1)
+        this.journal = journal;
+    }
+
     /**
      * Gets the size of the block.
      * @return the length of the side of the block.
      */
     public int getSize() { // returns the length of the side of block -- O(1)
-        return block.size();
+        return block.getHeight();
     }
 
     /**
@@ -98,7 +202,24 @@ public class Block
      * @param t the tile to be set.
      */
     public void setTile(int jellyTime, int peanutButter, Tile t) { // sets the tile at location y,x -- O(1)
-        block.get(jellyTime).set(peanutButter, t);
+        byte value = t == null ? EMPTY : t.getColor();
+        if (journal != null) {
+            journal.record(new TileWrite(jellyTime, peanutButter, get(jellyTime, peanutButter), value));
+        }
+        write(jellyTime, peanutButter, value);
+    }
+
+    /**
+     * Writes a cell of the block as it is currently shown and drops everything cached about the tiles.
+     * @param jellyTime the y-coordinate of the cell.
+     * @param peanutButter the x-coordinate of the cell.
+     * @param value the color of the cell, or EMPTY.
+     */
+    private void write(int jellyTime, int peanutButter, byte value) { // O(1)
+        set(jellyTime, peanutButter, value);
+        orientationsBuilt = 0;
+        boundsValid = false;
+        skirtValid = false;
     }
 
     /**
@@ -108,113 +229,593 @@ public class Block
      * @return the tile at the specified position.
      */
     public Tile getTile(int jellyTime, int peanutButter) { // gets the tile from location y,x -- O(1)
-        return block.get(jellyTime).get(peanutButter);
+        byte value = get(jellyTime, peanutButter);
+        return value == EMPTY ? null : Tile.of(value);
+    }
+
+    /**
+     * Gets the occupancy bitmasks of the block, one per row; bit j of row i is set when tile (i, j) is present.
+     * The returned arrays are shared with the block and must not be modified.
+     * @return the row bitmasks of the block.
+     */
+    long[][] getRowMasks() { // rebuilt once per shape change -- O(block_size)
+        return getRowMasks(Collision.NONE);
+    }
+
+    /**
+     * Gets the occupancy bitmasks the block would have after a transform, without changing the block.
+     * Every orientation has its own arrays, built the first time it is asked for after the tiles change,
+     * so checking a transform and then applying it costs one build at most;
+     * they are shared with the block and must not be modified.
+     * @param transform one of the Collision transform ids.
+     * @return the row bitmasks of the transformed block.
+     */
+    long[][] getRowMasks(int transform) { // O(1) while cached, O(block_size) to build an orientation
+        int o = orient(orientation, transform);
+        if ((orientationsBuilt & (1 << o)) == 0) {
+            int size = block.getHeight();
+            if (orientations == null) {
+                orientations = new long[8][][];
+            }
+            if (orientations[o] == null) {
+                orientations[o] = new long[size][(size + 63) >>> 6];
+            }
+            long[][] masks = orientations[o];
+            for (int i = 0; i < size; i++) {
+                Arrays.fill(masks[i], 0L);
+                for (int j = 0; j < size; j++) {
+                    if (get(o, i, j) != EMPTY) {
+                        masks[i][j >>> 6] |= 1L << j;
+                    }
+                }
+            }
+            orientationsBuilt |= 1 << o;
+        }
+        return orientations[o];
+    }
+
+    /**
+     * Gets the orientation a block shows after applying a transform to a block in the given orientation.
+     * @param orientation a set of the orientation bits.
+     * @param transform one of the Collision transform ids.
+     * @return the new set of orientation bits.
+     */
+    private static int orient(int orientation, int transform) { // O(1)
+        boolean transposed = (orientation & TRANSPOSE) != 0;
+        switch (transform) {
+            case Collision.ROTATE:
+                return (orientation ^ TRANSPOSE) ^ (transposed ? REVERSE_COLUMNS : REVERSE_ROWS);
+            case Collision.FLIP_VERTICAL:
+                return orientation ^ (transposed ? REVERSE_COLUMNS : REVERSE_ROWS);
+            case Collision.FLIP_HORIZONTAL:
+                return orientation ^ (transposed ? REVERSE_ROWS : REVERSE_COLUMNS);
+            default:
+                return orientation;
+        }
+    }
+
+    /**
+     * Reads a cell of the block as shown in the given orientation.
+     * @param orientation a set of the orientation bits.
+     * @param jellyTime the y-coordinate of the cell.
+     * @param peanutButter the x-coordinate of the cell.
+     * @return the color of the cell, or EMPTY.
+     */
+    private byte get(int orientation, int jellyTime, int peanutButter) { // O(1)
+        int last = block.getHeight() - 1;
+        int row = (orientation & TRANSPOSE) != 0 ? peanutButter : jellyTime;
+        int col = (orientation & TRANSPOSE) != 0 ? jellyTime : peanutButter;
+        return block.get((orientation & REVERSE_ROWS) != 0 ? last - row : row, (orientation & REVERSE_COLUMNS) != 0 ? last - col : col);
+    }
+
+    /**
+     * Reads a cell of the block as it is currently shown.
+     * @param jellyTime the y-coordinate of the cell.
+     * @param peanutButter the x-coordinate of the cell.
+     * @return the color of the cell, or EMPTY.
+     */
+    private byte get(int jellyTime, int peanutButter) { // O(1)
+        return get(orientation, jellyTime, peanutButter);
+    }
+
+    /**
+     * Writes a cell of the block as it is currently shown.
+     * @param jellyTime the y-coordinate of the cell.
+     * @param peanutButter the x-coordinate of the cell.
+     * @param value the color of the cell, or EMPTY.
+     */
+    private void set(int jellyTime, int peanutButter, byte value) { // O(1)
+        int last = block.getHeight() - 1;
+        int row = (orientation & TRANSPOSE) != 0 ? peanutButter : jellyTime;
+        int col = (orientation & TRANSPOSE) != 0 ? jellyTime : peanutButter;
+        block.set((orientation & REVERSE_ROWS) != 0 ? last - row : row, (orientation & REVERSE_COLUMNS) != 0 ? last - col : col, value);
+    }
+
+    /**
+     * Gets the number of tiles in the block.
+     * @return the tile count.
+     */
+    public int getTileCount() { // O(1) while cached, O(block_size / 64) to recount
+        bounds();
+        return tiles;
+    }
+
+    /**
+     * Gets the first row of the block that holds a tile.
+     * @return the row within the block, or the block size if the block has no tiles.
+     */
+    public int getTop() { // O(1) while cached
+        return firstRow(Collision.NONE);
+    }
+
+    /**
+     * Gets the last row of the block that holds a tile.
+     * @return the row within the block, or -1 if the block has no tiles.
+     */
+    public int getBottom() { // O(1) while cached
+        return lastRow(Collision.NONE);
+    }
+
+    /**
+     * Gets the first column of the block that holds a tile.
+     * @return the column within the block, or the block size if the block has no tiles.
+     */
+    public int getLeft() { // O(1) while cached
+        return firstColumn(Collision.NONE);
+    }
+
+    /**
+     * Gets the last column of the block that holds a tile.
+     * @return the column within the block, or -1 if the block has no tiles.
+     */
+    public int getRight() { // O(1) while cached
+        return lastColumn(Collision.NONE);
+    }
+
+    /**
+     * Gets the lowest row of a column of the block that holds a tile, the column's skirt.
+     * @param column the column within the block.
+     * @return the row within the block, or -1 if the column has no tiles.
+     */
+    public int getSkirt(int column) { // O(1) while cached, O(block_size^2 / 64) to rebuild
+        if (!skirtValid) {
+            int size = block.getHeight();
+            if (skirt == null) {
+                skirt = new int[size];
+            }
+            Arrays.fill(skirt, -1);
+            bounds();
+            long[][] rows = getRowMasks();
+            for (int i = bottom; i >= top; i--) {
+                for (int w = 0; w < rows[i].length; w++) {
+                    for (long m = rows[i][w]; m != 0; m &= m - 1) {
+                        int j = (w << 6) + Long.numberOfTrailingZeros(m);
+                        if (skirt[j] == -1) {
+                            skirt[j] = i;
+                        }
+                    }
+                }
+            }
+            skirtValid = true;
+        }
+        return skirt[column];
+    }
+
+    /**
+     * Gets the first row holding a tile after a transform, without changing the block.
+     * @param transform one of the Collision transform ids.
+     * @return the row, or the block size if the block has no tiles.
+     */
+    int firstRow(int transform) { // O(1) while cached
+        bounds();
+        switch (transform) {
+            case Collision.ROTATE:
+                return left;
+            case Collision.FLIP_VERTICAL:
+                return block.getHeight() - 1 - bottom;
+            default:
+                return top;
+        }
+    }
+
+    /**
+     * Gets the last row holding a tile after a transform, without changing the block.
+     * @param transform one of the Collision transform ids.
+     * @return the row, or -1 if the block has no tiles.
+     */
+    int lastRow(int transform) { // O(1) while cached
+        bounds();
+        switch (transform) {
+            case Collision.ROTATE:
+                return right;
+            case Collision.FLIP_VERTICAL:
+                return block.getHeight() - 1 - top;
+            default:
+                return bottom;
+        }
+    }
+
+    /**
+     * Gets the first column holding a tile after a transform, without changing the block.
+     * @param transform one of the Collision transform ids.
+     * @return the column, or the block size if the block has no tiles.
+     */
+    int firstColumn(int transform) { // O(1) while cached
+        bounds();
+        switch (transform) {
+            case Collision.ROTATE:
+                return block.getHeight() - 1 - bottom;
+            case Collision.FLIP_HORIZONTAL:
+                return block.getHeight() - 1 - right;
+            default:
+                return left;
+        }
+    }
+
+    /**
+     * Gets the last column holding a tile after a transform, without changing the block.
+     * @param transform one of the Collision transform ids.
+     * @return the column, or -1 if the block has no tiles.
+     */
+    int lastColumn(int transform) { // O(1) while cached
+        bounds();
+        switch (transform) {
+            case Collision.ROTATE:
+                return block.getHeight() - 1 - top;
+            case Collision.FLIP_HORIZONTAL:
+                return block.getHeight() - 1 - left;
+            default:
+                return right;
+        }
+    }
+
+    /**
+     * Recounts the tiles and the bounding box from the row bitmasks if they are stale.
+     */
+    private void bounds() { // O(1) while cached, O(block_size / 64) to recount
+        if (boundsValid) {
+            return;
+        }
+        long[][] rows = getRowMasks();
+        int size = block.getHeight();
+        tiles = 0;
+        top = size;
+        bottom = -1;
+        left = size;
+        right = -1;
+        for (int i = 0; i < size; i++) {
+            for (int w = 0; w < rows[i].length; w++) {
+                long m = rows[i][w];
+                if (m != 0) {
+                    tiles += Long.bitCount(m);
+                    top = Math.min(top, i);
+                    bottom = i;
+                    left = Math.min(left, (w << 6) + Long.numberOfTrailingZeros(m));
+                    right = Math.max(right, (w << 6) + 63 - Long.numberOfLeadingZeros(m));
+                }
+            }
+        }
+        boundsValid = true;
+    }
+
+    /**
+     * Applies a transform by changing the orientation; the bitmasks of every orientation stay valid.
+     * The tile count does not change and the bounding box is moved in O(1); the skirt is rebuilt when next needed.
+     * @param transform the Collision transform id that was applied.
+     */
+    private void transformed(int transform) {
+        if (boundsValid) {
+            int newTop = firstRow(transform);
+            int newBottom = lastRow(transform);
+            int newLeft = firstColumn(transform);
+            int newRight = lastColumn(transform);
+            top = newTop;
+            bottom = newBottom;
+            left = newLeft;
+            right = newRight;
+        }
+        skirtValid = false;
+        orientation = orient(orientation, transform);
+    }
+
+    /**
+     * Applies a transform and records it.
+     * @param transform the Collision transform id.
+     */
+    private void turn(int transform) { // O(1)
+        transformed(transform);
+        if (journal != null) {
+            journal.record(new Turn(transform));
+        }
     }
 
     /**
      * Drops the block by one row.
      */
     public void drop() { // drops the block by one row -- O(block_size)
-        this.jellyTime++;
+        move(1, 0);
+    }
+
+    /**
+     * Drops the block by several rows at once.
+     * @param rows the number of rows to fall.
+     */
+    public void drop(int rows) { // O(1)
+        move(rows, 0);
     }
 
     /**
      * Moves the block one spot to the left.
      */
     public void moveLeft() { // moves the block one spot to the left -- O(block_size)
-        this.peanutButter--;
+        move(0, -1);
     }
 
     /**
      * Moves the block one spot to the right.
      */
     public void moveRight() { // moves the block one spot to the right -- O(block_size)
-        this.peanutButter++;
+        move(0, 1);
     }
 
     /**
-     * Rotates the block 90 degrees clockwise.
+     * Moves the block and records the move.
+     * @param rows the number of rows to move down.
+     * @param columns the number of columns to move right.
      */
-    public void rotate() { // rotates the block 90 degrees clockwise -- O(block_size)
-        int size = block.size();
-        DynamicArray<DynamicArray<Tile>> rotatedBlock = new DynamicArray<>(size);
-        for (int i = 0; i < size; i++) {
-            DynamicArray<Tile> newRow = new DynamicArray<>(block.size());
-            for (int j = 0; j < size; j++) {
-                newRow.set(j, block.get(size - j - 1).get(i));
-            }
-            rotatedBlock.set(i, newRow);
+    private void move(int rows, int columns) { // O(1)
+        jellyTime += rows;
+        peanutButter += columns;
+        if (journal != null) {
+            journal.record(new Move(rows, columns));
         }
-        block = rotatedBlock;
+    }
+
+    /**
+     * Rotates the block 90 degrees clockwise.
+     * The tiles stay where they are stored; only the orientation they are read in changes.
+     */
+    public void rotate() { // rotates the block 90 degrees clockwise -- O(1)
+        turn(Collision.ROTATE);
     }
 
     /**
      * Flips the block vertically.
      */
-    public void flipVertical() { // flips the block vertically -- O(block_size)
-        int size = block.size();
-        for (int i = 0; i < size / 2; i++) {
-            DynamicArray<Tile> temp = block.get(i);
-            block.set(i, block.get(size - i - 1));
-            block.set(size - i - 1, temp);
-        }
+    public void flipVertical() { // flips the block vertically -- O(1)
+        turn(Collision.FLIP_VERTICAL);
     }
 
     /**
      * Flips the block horizontally.
      */
-    public void flipHorizontal() { // flips the block horizontally -- O(block_size)
-        int size = block.size();
-        for (int i = 0; i < size; i++) {
-            DynamicArray<Tile> row = block.get(i);
-            for (int j = 0; j < size / 2; j++) {
-                Tile temp = row.get(j);
-                row.set(j, row.get(size - j - 1));
-                row.set(size - j - 1, temp);
-            }
-        }
+    public void flipHorizontal() { // flips the block horizontally -- O(1)
+        turn(Collision.FLIP_HORIZONTAL);
     }
 
     /**
      * Scales up the block (double size).
+     * Only the bounding box is copied, since the rest of the new block starts empty,
+     * and the new block's tile count and bounding box are derived from this one's.
      * @return the scaled up block.
      */
     public Block scaleUp() { // scales up the block (double size) -- O(block_size)
-        int originalSize = block.size();
+        int originalSize = block.getHeight();
         int newSize = originalSize * 2;
-        Block scaledBlock = new Block(this.getY(), this.getX(), newSize, (byte) 0);
+        Block scaledBlock = new Block(this.getY(), this.getX(), newSize);
+        bounds();
 
-        for (int i = 0; i < originalSize; i++) {
-            for (int j = 0; j < originalSize; j++) {
-                Tile originalTile = block.get(i).get(j);
+        for (int i = top; i <= bottom; i++) {
+            for (int j = left; j <= right; j++) {
+                byte original = get(i, j);
                 int scaledI = i * 2;
                 int scaledJ = j * 2;
-                scaledBlock.setTile(scaledI, scaledJ, originalTile);
-                scaledBlock.setTile(scaledI, scaledJ + 1, originalTile);
-                scaledBlock.setTile(scaledI + 1, scaledJ, originalTile);
-                scaledBlock.setTile(scaledI + 1, scaledJ + 1, originalTile);
+                scaledBlock.block.set(scaledI, scaledJ, original);
+                scaledBlock.block.set(scaledI, scaledJ + 1, original);
+                scaledBlock.block.set(scaledI + 1, scaledJ, original);
+                scaledBlock.block.set(scaledI + 1, scaledJ + 1, original);
             }
         }
+        if (tiles > 0) {
+            scaledBlock.tiles = tiles * 4;
+            scaledBlock.top = top * 2;
+            scaledBlock.bottom = bottom * 2 + 1;
+            scaledBlock.left = left * 2;
+            scaledBlock.right = right * 2 + 1;
+        } else {
+            scaledBlock.tiles = 0;
+            scaledBlock.top = newSize;
+            scaledBlock.bottom = -1;
+            scaledBlock.left = newSize;
+            scaledBlock.right = -1;
+        }
+        scaledBlock.boundsValid = true;
+        scaledBlock.journal = journal;
 
         return scaledBlock;
     }
 
     /**
      * Scales down the block (half size).
+     * Only cells inside the bounding box can hold a tile, so only those are sampled.
      * @return the scaled down block.
      */
     public Block scaleDown() { // scales down the block (half size) -- O(block_size)
-        int newSize = Math.max(block.size() / 2, 2);
-        Block scaledBlock = new Block(this.getY(), this.getX(), newSize, (byte) 0);
+        int newSize = Math.max(block.getHeight() / 2, 2);
+        Block scaledBlock = new Block(this.getY(), this.getX(), newSize);
+        bounds();
 
-        for (int i = 0; i < newSize; i++) {
-            for (int j = 0; j < newSize; j++) {
+        for (int i = (top + 1) / 2; i < newSize && i * 2 <= bottom; i++) {
+            for (int j = (left + 1) / 2; j < newSize && j * 2 <= right; j++) {
                 int originalI = i * 2;
                 int originalJ = j * 2;
-                scaledBlock.setTile(i, j, block.get(originalI).get(originalJ));
+                scaledBlock.block.set(i, j, get(originalI, originalJ));
             }
         }
+        scaledBlock.journal = journal;
 
         return scaledBlock;
     }
+
+    /**
+     * A move of the block.
+     */
+    private final class Move implements Journal.Delta
+    {
+        /**
+         * The number of rows moved down.
+         */
+        private final int rows;
+        /**
+         * The number of columns moved right.
+         */
+        private final int columns;
+
+        /**
+         * Constructs a move.
+         * @param rows the number of rows moved down.
+         * @param columns the number of columns moved right.
+         */
+        Move(int rows, int columns) { // O(1)
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        /**
+         * Moves the block back.
+         */
+        @Override
+        public void undo() { // O(1)
+            jellyTime -= rows;
+            peanutButter -= columns;
+        }
+
+        /**
+         * Moves the block again.
+         */
+        @Override
+        public void redo() { // O(1)
+            jellyTime += rows;
+            peanutButter += columns;
+        }
+
+        /**
+         * Estimates the memory held by the move.
+         * @return the estimate, in bytes.
+         */
+        @Override
+        public long bytes() { // O(1)
+            return 24;
+        }
+    }
+
+    /**
+     * A rotation or flip of the block.
+     */
+    private final class Turn implements Journal.Delta
+    {
+        /**
+         * The Collision transform id that was applied.
+         */
+        private final int transform;
+
+        /**
+         * Constructs a transform record.
+         * @param transform the Collision transform id that was applied.
+         */
+        Turn(int transform) { // O(1)
+            this.transform = transform;
+        }
+
+        /**
+         * Applies the inverse transform: a flip undoes itself, a rotation takes three more quarter turns.
+         */
+        @Override
+        public void undo() { // O(1)
+            transformed(transform);
+            if (transform == Collision.ROTATE) {
+                transformed(transform);
+                transformed(transform);
+            }
+        }
+
+        /**
+         * Applies the transform again.
+         */
+        @Override
+        public void redo() { // O(1)
+            transformed(transform);
+        }
+
+        /**
+         * Estimates the memory held by the transform record.
+         * @return the estimate, in bytes.
+         */
+        @Override
+        public long bytes() { // O(1)
+            return 16;
+        }
+    }
+
+    /**
+     * A cell written by setTile(), with what it held before and after.
+     */
+    private final class TileWrite implements Journal.Delta
+    {
+        /**
+         * The y-coordinate of the cell, as shown when it was written.
+         */
+        private final int row;
+        /**
+         * The x-coordinate of the cell, as shown when it was written.
+         */
+        private final int col;
+        /**
+         * The color the cell held before, or EMPTY.
+         */
+        private final byte before;
+        /**
+         * The color the cell held after, or EMPTY.
+         */
+        private final byte after;
+
+        /**
+         * Constructs a cell write record.
+         * @param row the y-coordinate of the cell.
+         * @param col the x-coordinate of the cell.
+         * @param before the color the cell held before, or EMPTY.
+         * @param after the color the cell holds after, or EMPTY.
+         */
+        TileWrite(int row, int col, byte before, byte after) { // O(1)
+            this.row = row;
+            this.col = col;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Puts back what the cell held before.
+         */
+        @Override
+        public void undo() { // O(1)
+            write(row, col, before);
+        }
+
+        /**
+         * Writes the cell again.
+         */
+        @Override
+        public void redo() { // O(1)
+            write(row, col, after);
+        }
+
+        /**
+         * Estimates the memory held by the cell write record.
+         * @return the estimate, in bytes.
+         */
+        @Override
+        public long bytes() { // O(1)
+            return 24;
+        }
+    }
 }
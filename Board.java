@@ -1,29 +1,226 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 /**
  * A class representing the game board in a Tetris game.
+ * Each row is packed into a bitset of occupied cells plus a plane of tile colors,
+ * so row scans become word operations instead of per-cell null checks.
+ * Boards are persistent: snapshot() shares every row with the copy, and a shared row
+ * is only copied when one of the boards writes to it.
+ * Colors live in a ColorPlane: on the heap by default, or in a memory-mapped file (see create() and open()).
+ * A sparse board (see sparse()) only allocates the rows that hold tiles: every empty row points at one shared
+ * all-zero bitset and has no colors, and rows that become empty, by clearing or by their last tile being removed,
+ * drop their storage again. The per-row bookkeeping (the row references, row index, stamps and sharing flags)
+ * still takes O(height) memory, a few dozen bytes per row, whether the rows are in use or not.
+ * A board with a Journal (see setJournal()) records every change as a delta that can be undone:
+ * the cells a write changed, the rows a clear or reward removed and the row a penalty wrote.
  */
 public class Board
 {
     /**
-     * Dynamic Array used to keep track of the whole board.
+     * Occupancy bitset of every row; bit x of a row is set when column x holds a tile.
+     */
+    private long[][] bits;
+    /**
+     * The all-zero bitset that the empty rows of a sparse board share, or null for a dense board.
+     */
+    private long[] emptyBits;
+    /**
+     * Tile colors of every cell; only meaningful where the matching occupancy bit is set.
+     */
+    private ColorPlane colors;
+    /**
+     * The width of the board.
+     */
+    private int width;
+    /**
+     * Number of 64-bit words used by the bitset of one row.
+     */
+    private int words;
+    /**
+     * Tile count of every row, kept up to date as tiles are written and rows move.
+     */
+    private RowIndex counts;
+    /**
+     * Stamp of the latest change to the board; it grows by one with every row that changes.
+     */
+    private long version;
+    /**
+     * Stamp of the latest change to every row, so a reader can tell which rows changed since it last looked.
+     */
+    private long[] rowVersions;
+    /**
+     * Whether the arrays of every row may also belong to another board; such rows are copied before they are written.
+     */
+    private boolean[] shared;
+    /**
+     * Row of the highest tile in every column, or the board height if the column is empty.
+     */
+    private int[] tops;
+    /**
+     * Scratch bitset of the columns whose top has been found, used while recomputing tops.
+     */
+    private long[] found;
+    /**
+     * Where changes are recorded so they can be undone, or null if they are not recorded.
      */
-    private DynamicArray<DynamicArray<Tile>> board; // the internal storage of the board data
+    private Journal journal;
 
     /**
      * Constructs a Tetris board with the specified height and width.
-     * This constructor creates a 2D placeholder of null values;
-     * these values will be populated later with calls to setTile().
+     * Every cell starts out empty; tiles are placed later with calls to setTile().
      * @param height the height of the board.
      * @param width the width of the board.
      */
-    public Board(int height, int width) { // this constructor creates a 2D placeholder of null values; these values will be populated later with calls to setTile() -- O(height * width)
-        board = new DynamicArray<>(height);
-        for (int i = 0; i < height; i++) {
-            DynamicArray<Tile> row = new DynamicArray<>(width);
-            for (int j = 0; j < width; j++) {
-                row.set(j, null);
+    public Board(int height, int width) { // this constructor creates an empty board; tiles are placed later with calls to setTile() -- O(height * width)
+        this(new HeapColorPlane(height, width), height, width);
+        for (int y = 0; y < height; y++) {
+            bits[y] = new long[words];
+        }
+    }
+
+    /**
+     * Constructs an empty board over a color plane whose cells are all color 0.
+     * @param colors the color plane, which the board takes over.
+     * @param height the number of rows of the plane.
+     * @param width the number of columns of the plane.
+     */
+    private Board(ColorPlane colors, int height, int width) { // O(height)
+        this.width = width;
+        this.words = (width + 63) >>> 6;
+        this.colors = colors;
+        bits = new long[height][];
+        counts = new RowIndex(height);
+        rowVersions = new long[height];
+        shared = new boolean[height];
+        tops = new int[width];
+        Arrays.fill(tops, height);
+        found = new long[words];
+    }
+
+    /**
+     * Creates an empty board whose colors live off the heap in a memory-mapped file, replacing any existing file.
+     * Every change is written through to the file; call force() to make it durable.
+     * @param file the file.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @return the board.
+     * @throws IOException if the file cannot be created or mapped.
+     * @throws IllegalArgumentException if the board does not fit in a 2 GB file.
+     */
+    public static Board create(Path file, int height, int width) throws IOException { // O(height * width / 64)
+        Board board = new Board(MappedColorPlane.create(file, height, width), height, width);
+        for (int y = 0; y < height; y++) {
+            board.bits[y] = new long[board.words];
+        }
+        return board;
+    }
+
+    /**
+     * Creates an empty sparse board, for very tall boards that stay mostly empty.
+     * No row is allocated up front; a row gets its bitset and colors when its first tile is written
+     * and gives them up when it is emptied, so memory grows with the rows in use rather than with the board area,
+     * on top of O(height) bookkeeping.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @return the board.
+     */
+    public static Board sparse(int height, int width) { // O(height)
+        Board board = new Board(new SparseColorPlane(height, width), height, width);
+        board.emptyBits = new long[board.words];
+        Arrays.fill(board.bits, board.emptyBits);
+        Arrays.fill(board.shared, true);
+        return board;
+    }
+
+    /**
+     * Reopens a board saved by a board made with create(), mapping its file again.
+     * Cells are read back as tiles wherever their color is not 0.
+     * @param file the file.
+     * @return the board.
+     * @throws IOException if the file cannot be mapped or is not a mapped board file.
+     */
+    public static Board open(Path file) throws IOException { // O(height * width)
+        MappedColorPlane colors = MappedColorPlane.open(file);
+        Board board = new Board(colors, colors.getHeight(), colors.getWidth());
+        for (int y = 0; y < board.bits.length; y++) {
+            board.bits[y] = new long[board.words];
+        }
+        board.rebuild();
+        return board;
+    }
+
+    /**
+     * Writes the tile colors to the storage device if they live in a file; does nothing otherwise.
+     */
+    public void force() { // O(height * width) for a mapped board
+        colors.force();
+    }
+
+    /**
+     * Starts or stops recording the changes made to the board.
+     * Snapshots do not inherit the journal.
+     * @param journal where to record changes, or null to stop recording.
+     */
+    public void setJournal(Journal journal) { // O(1)
+        this.journal = journal;
+    }
+
+    /**
+     * Gets where the changes made to the board are recorded.
+     * @return the journal, or null if changes are not recorded.
+     */
+    public Journal getJournal() { // O(1)
+        return journal;
+    }
+
+    /**
+     * Constructs a board that shares every row with another board.
+     * The caller must have marked every row of the source as shared.
+     * @param source the board to share rows with.
+     */
+    private Board(Board source) { // O(height)
+        width = source.width;
+        words = source.words;
+        bits = source.bits.clone();
+        emptyBits = source.emptyBits;
+        colors = source.colors.share();
+        counts = source.counts.copy();
+        version = source.version;
+        rowVersions = source.rowVersions.clone();
+        shared = source.shared.clone();
+        tops = source.tops.clone();
+        found = new long[words];
+    }
+
+    /**
+     * Takes a snapshot of the board: an independent board with the same tiles.
+     * No row is copied up front; both boards share every row until one of them writes to it,
+     * so a snapshot costs O(height) and each later change copies only the rows it touches.
+     * The snapshot of a memory-mapped board keeps its colors on the heap, which costs O(height * width).
+     * @return the snapshot.
+     */
+    public Board snapshot() { // O(height)
+        Arrays.fill(shared, true);
+        return new Board(this);
+    }
+
+    /**
+     * Copies the board without changing it, so that other threads may copy the same board at the same time.
+     * Rows this board already shares with a snapshot are shared with the copy as well; every other row is copied.
+     * Unlike snapshot(), this leaves the rows of this board writable in place.
+     * @return the copy, which does not inherit the journal.
+     */
+    public Board copy() { // O(height), plus O(width) per row this board does not share
+        Board copy = new Board(this);
+        for (int y = 0; y < bits.length; y++) {
+            if (!shared[y]) {
+                copy.shared[y] = true;
+                copy.own(y);
             }
-            board.set(i, row);
         }
+        return copy;
     }
 
     /**
@@ -31,7 +228,7 @@ public class Board
      * @return the width of the board.
      */
     public int getWidth() { // returns the width of the board -- O(1)
-        return board.get(0).size();
+        return width;
     }
 
     /**
@@ -39,27 +236,89 @@ public class Board
      * @return the height of the board.
      */
     public int getHeight() { // returns the height of the board -- O(1)
-        return board.size();
+        return bits.length;
     }
 
     /**
      * Sets the tile at the specified position on the board.
      * @param jellyTime the y-coordinate of the tile.
      * @param peanutButter the x-coordinate of the tile.
-     * @param t the tile to be set.
+     * @param t the tile to be set, or null to empty the cell.
+     * @throws IndexOutOfBoundsException if the position is outside the board.
      */
     public void setTile(int jellyTime, int peanutButter, Tile t) { // sets the tile at location y,x -- O(1)
-        board.get(jellyTime).set(peanutButter, t);
+        checkBounds(jellyTime, peanutButter);
+        if (journal != null) {
+            CellWrites cells = new CellWrites(1);
+            cells.add(jellyTime, peanutButter, t);
+            journal.record(cells);
+        }
+        set(jellyTime, peanutButter, t);
+    }
+
+    /**
+     * Gets the number of tiles in a row.
+     * @param jellyTime the y-coordinate of the row.
+     * @return the number of occupied cells in the row.
+     */
+    public int getCount(int jellyTime) { // O(1)
+        return counts.get(jellyTime);
+    }
+
+    /**
+     * Gets the stamp of the latest change to the board.
+     * @return the stamp; it only ever grows.
+     */
+    public long getVersion() { // O(1)
+        return version;
+    }
+
+    /**
+     * Gets the stamp of the latest change to a row.
+     * A row has changed since a reader last looked if its stamp is greater than getVersion() was back then.
+     * @param jellyTime the y-coordinate of the row.
+     * @return the stamp, or 0 if the row has never changed.
+     */
+    public long getRowVersion(int jellyTime) { // O(1)
+        return rowVersions[jellyTime];
+    }
+
+    /**
+     * Gets the height of the stack in a column, counted from the bottom of the board up to its highest tile.
+     * @param peanutButter the x-coordinate of the column.
+     * @return the number of rows from the bottom up to and including the highest tile, or 0 if the column is empty.
+     */
+    public int getColumnHeight(int peanutButter) { // O(1)
+        return bits.length - tops[peanutButter];
+    }
+
+    /**
+     * Finds the first tile in a column at or below a row.
+     * Rows at or above the top of the column are answered from the heightmap; rows below it are scanned.
+     * @param jellyTime the row to start from, which may be the board height.
+     * @param peanutButter the x-coordinate of the column.
+     * @return the row of the tile, or the board height if there is none.
+     */
+    public int nextTileDown(int jellyTime, int peanutButter) { // O(1) above the top of the column, O(height) below it
+        if (jellyTime <= tops[peanutButter]) {
+            return tops[peanutButter];
+        }
+        return scanDown(jellyTime, peanutButter);
     }
 
     /**
      * Gets the tile from the specified position on the board.
      * @param jellyTime the y-coordinate of the tile.
      * @param peanutButter the x-coordinate of the tile.
-     * @return the tile at the specified position.
+     * @return the tile at the specified position, or null if the cell is empty.
+     * @throws IndexOutOfBoundsException if the position is outside the board.
      */
     public Tile getTile(int jellyTime, int peanutButter) { // gets the tile from location y,x -- O(1)
-        return board.get(jellyTime).get(peanutButter);
+        checkBounds(jellyTime, peanutButter);
+        if ((bits[jellyTime][peanutButter >>> 6] & (1L << peanutButter)) == 0) {
+            return null;
+        }
+        return Tile.of(colors.get(jellyTime, peanutButter));
     }
 
     /**
@@ -68,10 +327,28 @@ public class Board
      */
     public void consolidate(Block block) { // when the dropping block has reached its final location, this method will consolidate it into the tetris well -- O(block_size)
         int size = block.getSize();
+        CellWrites cells = null;
+        if (journal != null) {
+            cells = new CellWrites(block.getTileCount());
+            journal.record(cells);
+        }
         for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (block.getTile(i, j) != null) {
-                    setTile(i + block.getY(), j + block.getX(), block.getTile(i, j));
+            int delta = 0;
+            try {
+                for (int j = 0; j < size; j++) {
+                    Tile tile = block.getTile(i, j);
+                    if (tile != null) {
+                        checkBounds(i + block.getY(), j + block.getX());
+                        if (cells != null) {
+                            cells.add(i + block.getY(), j + block.getX(), tile);
+                        }
+                        delta += write(i + block.getY(), j + block.getX(), tile);
+                        touch(i + block.getY());
+                    }
+                }
+            } finally {
+                if (delta != 0) {
+                    counts.add(i + block.getY(), delta);
                 }
             }
         }
@@ -79,106 +356,685 @@ public class Board
 
     /**
      * Clears any complete rows on the board and shifts the above tiles down.
+     * Rows are moved by reference in a single pass; the cleared rows are emptied and reused at the top.
+     * Rows above the highest tile are already empty and are left alone.
+     * @return the number of rows cleared.
      */
-    public void clearRows() { // clear any/all rows that are complete and shifts the above tiles down -- O(board_size)
-        int height = board.size();
-        int width = board.get(0).size();
-        for (int i = height - 1; i >= 0; i--) {
-            boolean rowFull = true;
-            for (int j = 0; j < width; j++) {
-                if (board.get(i).get(j) == null) {
-                    rowFull = false;
-                    break;
+    public int clearRows() { // clear any/all rows that are complete and shifts the above tiles down -- O(stack_height + cleared_rows * width + stack_height * width / 64)
+        int lowest = counts.fullest();
+        if (lowest == -1 || counts.get(lowest) != width) {
+            return 0;
+        }
+        int highest = counts.highest();
+        if (journal != null) {
+            int[] removed = new int[lowest - highest + 1];
+            int n = 0;
+            for (int i = highest; i <= lowest; i++) {
+                if (counts.get(i) == width) {
+                    removed[n++] = i;
                 }
             }
-            if (rowFull) {
-                for (int k = i; k > 0; k--) {
-                    board.set(k, board.get(k - 1));
-                }
-                DynamicArray<Tile> newRow = new DynamicArray<>(width);
-                for (int j = 0; j < width; j++) {
-                    newRow.set(j, null);
-                }
-                board.set(0, newRow);
-                i++;
+            journal.record(new RowsRemoved(highest, lowest, Arrays.copyOf(removed, n)));
+        }
+        int target = lowest;
+        for (int i = lowest; i >= highest; i--) {
+            if (counts.get(i) != width) {
+                swapRows(i, target);
+                target--;
             }
         }
+        for (int i = highest; i <= target; i++) {
+            emptyRow(i);
+        }
+        counts.refresh(highest, lowest);
+        recomputeTops();
+        return target - highest + 1;
     }
 
     /**
      * When this method is called, it finds the row with the most amount of tiles and removes it.
      * In case of a tie it chooses the lowest row.
-     * After this it moves all rows above the deleted row down by 1.
+     * After this it moves all rows above the deleted row down by 1;
+     * only the rows up to the highest tile are moved, since the ones above it are empty.
      */
-    public void reward() { // applies the reward as explained in the project description -- O(board_size)
-        int maxTiles = 0;
-        int maxRow = -1;
+    public void reward() { // applies the reward as explained in the project description -- O(stack_height + width + stack_height * width / 64)
+        int maxRow = counts.fullest();
 
-        for (int i = 0; i < board.size(); i++) {
-            int count = 0;
-            for (int j = 0; j < board.get(0).size(); j++) {
-                if (board.get(i).get(j) != null) {
-                    count++;
-                }
+        if (maxRow != -1) {
+            int highest = Math.max(counts.highest(), 0);
+            if (journal != null) {
+                journal.record(new RowsRemoved(highest, maxRow, new int[] {maxRow}));
             }
-            if (count > maxTiles || (count == maxTiles && maxRow == -1) || (count == maxTiles && i > maxRow)) {
-                maxTiles = count;
-                maxRow = i;
+            for (int i = maxRow; i > highest; i--) {
+                swapRows(i, i - 1);
             }
+            emptyRow(highest);
+            counts.refresh(highest, maxRow);
+            recomputeTops();
         }
+    }
 
-        if (maxRow != -1) {
-            for (int j = 0; j < board.get(0).size(); j++) {
-                board.get(maxRow).set(j, null);
+
+    /**
+     * Applies the penalty as explained in the project description.
+     */
+    public void penalize() { // applies the penalty as explained in the project description -- O(width / 64 + log height)
+        int minRow = counts.emptiest();
+        int highestRowIndex = counts.highest();
+
+        if (minRow > 0 && highestRowIndex > 0) {
+            if (journal != null) {
+                journal.record(new RowWritten(highestRowIndex - 1, minRow));
             }
-            for (int i = maxRow; i > 0; i--) {
-                for (int j = 0; j < board.get(0).size(); j++) {
-                    board.get(i).set(j, board.get(i - 1).get(j));
+            own(highestRowIndex - 1);
+            System.arraycopy(bits[minRow], 0, bits[highestRowIndex - 1], 0, words);
+            colors.copy(minRow, highestRowIndex - 1);
+            counts.set(highestRowIndex - 1, counts.get(minRow));
+            touch(highestRowIndex - 1);
+            raiseTops(highestRowIndex - 1);
+        }
+    }
+
+    /**
+     * Checks if a row of block cells fits into a row of the board.
+     * Bit j of the mask stands for column j + peanutButter on the board.
+     * @param jellyTime the y-coordinate of the board row.
+     * @param mask the occupancy bitmask of the block row.
+     * @param peanutButter the x-coordinate of mask bit 0, which may be negative.
+     * @return true if every set bit lands inside the board on an empty cell, false otherwise.
+     */
+    public boolean fitsRow(int jellyTime, long[] mask, int peanutButter) { // shifted AND of the mask against the row bitset -- O(mask_words)
+        long[] row = bits[jellyTime];
+        for (int k = 0; k < mask.length; k++) {
+            long m = mask[k];
+            if (m == 0) {
+                continue;
+            }
+            int base = (k << 6) + peanutButter;
+            if (base + Long.numberOfTrailingZeros(m) < 0 || base + 63 - Long.numberOfLeadingZeros(m) >= width) {
+                return false;
+            }
+            int w = base >> 6;
+            int shift = base & 63;
+            long low = m << shift;
+            if (low != 0 && (row[w] & low) != 0) {
+                return false;
+            }
+            if (shift != 0) {
+                long high = m >>> (64 - shift);
+                if (high != 0 && (row[w + 1] & high) != 0) {
+                    return false;
                 }
             }
-            for (int j = 0; j < board.get(0).size(); j++) {
-                board.get(0).set(j, null);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a run of columns in a row holds no tiles.
+     * @param jellyTime the y-coordinate of the row.
+     * @param fromX the first column of the run.
+     * @param toX the last column of the run, inclusive.
+     * @return true if every cell of the run is empty, false otherwise.
+     */
+    public boolean isEmpty(int jellyTime, int fromX, int toX) { // masks the run out of the row bitset -- O(width / 64)
+        if (fromX > toX) {
+            return true;
+        }
+        checkBounds(jellyTime, fromX);
+        checkBounds(jellyTime, toX);
+        if (counts.get(jellyTime) == 0) {
+            return true;
+        }
+        long[] row = bits[jellyTime];
+        int first = fromX >>> 6;
+        int last = toX >>> 6;
+        for (int w = first; w <= last; w++) {
+            long m = -1L;
+            if (w == first) {
+                m &= -1L << fromX;
+            }
+            if (w == last) {
+                m &= -1L >>> (63 - (toX & 63));
+            }
+            if ((row[w] & m) != 0) {
+                return false;
             }
         }
+        return true;
     }
 
+    /**
+     * Writes one cell of the board without touching the row counts; the column tops are kept up to date.
+     * Emptying a cell that is already empty changes nothing, so it does not copy a shared row.
+     * @param jellyTime the y-coordinate of the cell.
+     * @param peanutButter the x-coordinate of the cell.
+     * @param t the tile to be written, or null to empty the cell.
+     * @return the change in the number of tiles in the row: 1, 0 or -1.
+     */
+    private int write(int jellyTime, int peanutButter, Tile t) { // O(1), plus O(width) to copy a shared row and O(height) to remove the top of a column
+        long bit = 1L << peanutButter;
+        int word = peanutButter >>> 6;
+        boolean had = (bits[jellyTime][word] & bit) != 0;
+        if (t == null && !had) {
+            return 0;
+        }
+        own(jellyTime);
+        long[] row = bits[jellyTime];
+        if (t != null) {
+            row[word] |= bit;
+            colors.set(jellyTime, peanutButter, t.getColor());
+            if (jellyTime < tops[peanutButter]) {
+                tops[peanutButter] = jellyTime;
+            }
+            return had ? 0 : 1;
+        }
+        row[word] &= ~bit;
+        colors.set(jellyTime, peanutButter, (byte) 0);
+        if (jellyTime == tops[peanutButter]) {
+            tops[peanutButter] = scanDown(jellyTime + 1, peanutButter);
+        }
+        return had ? -1 : 0;
+    }
 
     /**
-     * Applies the penalty as explained in the project description.
+     * Exchanges two rows by reference, together with their counts, without refreshing the row index.
+     * Both rows are stamped as changed.
+     * @param a the first row.
+     * @param b the second row.
+     */
+    private void swapRows(int a, int b) { // O(1)
+        long[] tempBits = bits[a];
+        bits[a] = bits[b];
+        bits[b] = tempBits;
+        colors.swap(a, b);
+        boolean tempShared = shared[a];
+        shared[a] = shared[b];
+        shared[b] = tempShared;
+        int tempCount = counts.get(a);
+        counts.put(a, counts.get(b));
+        counts.put(b, tempCount);
+        touch(a);
+        touch(b);
+    }
+
+    /**
+     * Removes every tile from a row without refreshing the row index.
+     * A sparse board gives the row's storage up and points it back at the shared empty bitset.
+     * @param jellyTime the y-coordinate of the row.
+     */
+    private void emptyRow(int jellyTime) { // O(width)
+        if (emptyBits != null) {
+            bits[jellyTime] = emptyBits;
+            colors.clear(jellyTime);
+            shared[jellyTime] = true;
+        } else if (shared[jellyTime]) {
+            bits[jellyTime] = new long[words];
+            colors.detach(jellyTime, false);
+            shared[jellyTime] = false;
+        } else {
+            Arrays.fill(bits[jellyTime], 0L);
+            colors.clear(jellyTime);
+        }
+        counts.put(jellyTime, 0);
+        touch(jellyTime);
+    }
+
+    /**
+     * Rebuilds the occupancy bitsets and row counts from the color plane;
+     * every cell with a color other than 0 holds a tile. Each row is read in bulk and scanned 8 colors at a time.
+     */
+    private void rebuild() { // O(height * width / 8)
+        byte[] row = new byte[width];
+        for (int y = 0; y < bits.length; y++) {
+            colors.read(y, row);
+            counts.put(y, RowScan.occupancy(row, width, bits[y]));
+        }
+        if (bits.length > 0) {
+            counts.refresh(0, bits.length - 1);
+        }
+        recomputeTops();
+    }
+
+    /**
+     * Recomputes the top of every column, scanning down from the highest non-empty row
+     * until every column has been seen or the bottom is reached.
      */
-    public void penalize() { // applies the penalty as explained in the project description -- O(board_size)
-        int minTiles = Integer.MAX_VALUE;
-        int minRow = -1;
-        int boardYSize = board.size();
-        int boardXSize = board.get(0).size();
-        int highestRowIndex = -1;
-
-        for (int i = 0; i < boardYSize; i++) {
-            int count = 0;
-            for (int j = 0; j < boardXSize; j++) {
-                if (board.get(i).get(j) != null) {
-                    count++;
+    private void recomputeTops() { // O(width + scanned_rows * width / 64)
+        Arrays.fill(tops, bits.length);
+        Arrays.fill(found, 0L);
+        int missing = width;
+        for (int y = Math.max(counts.highest(), 0); y < bits.length && missing > 0; y++) {
+            long[] row = bits[y];
+            for (int w = 0; w < words; w++) {
+                long fresh = row[w] & ~found[w];
+                found[w] |= fresh;
+                missing -= Long.bitCount(fresh);
+                while (fresh != 0) {
+                    tops[(w << 6) + Long.numberOfTrailingZeros(fresh)] = y;
+                    fresh &= fresh - 1;
                 }
             }
-            if (count <= minTiles && count > 0) {
-                minTiles = count;
-                minRow = i;
+        }
+    }
+
+    /**
+     * Moves the top of every column that has a tile in a row up to that row, if the row is higher.
+     * @param jellyTime the y-coordinate of the row.
+     */
+    private void raiseTops(int jellyTime) { // O(width / 64 + tiles_in_row)
+        long[] row = bits[jellyTime];
+        for (int w = 0; w < words; w++) {
+            for (long m = row[w]; m != 0; m &= m - 1) {
+                int x = (w << 6) + Long.numberOfTrailingZeros(m);
+                if (jellyTime < tops[x]) {
+                    tops[x] = jellyTime;
+                }
             }
-            if (count > 0 && highestRowIndex == -1) {
-                highestRowIndex = i;
+        }
+    }
+
+    /**
+     * Finds the first tile in a column at or below a row by testing every row, jumping over runs of empty rows.
+     * @param jellyTime the row to start from.
+     * @param peanutButter the x-coordinate of the column.
+     * @return the row of the tile, or the board height if there is none.
+     */
+    private int scanDown(int jellyTime, int peanutButter) { // O(non_empty_rows * log height)
+        int word = peanutButter >>> 6;
+        long bit = 1L << peanutButter;
+        int y = jellyTime;
+        while (y < bits.length && (bits[y][word] & bit) == 0) {
+            y = counts.get(y) == 0 ? counts.nextNonEmpty(y) : y + 1;
+        }
+        return y;
+    }
+
+    /**
+     * Writes one cell of the board and updates its row count and stamp.
+     * A sparse board gives up the storage of a row whose last tile this removes.
+     * @param jellyTime the y-coordinate of the cell.
+     * @param peanutButter the x-coordinate of the cell.
+     * @param t the tile to be written, or null to empty the cell.
+     */
+    private void set(int jellyTime, int peanutButter, Tile t) { // O(1), plus the costs of write() and O(width) to release an emptied row
+        int delta = write(jellyTime, peanutButter, t);
+        touch(jellyTime);
+        if (delta != 0) {
+            counts.add(jellyTime, delta);
+            if (emptyBits != null && counts.get(jellyTime) == 0) {
+                emptyRow(jellyTime);
             }
         }
+    }
 
-        if (minRow > 0) {
-            DynamicArray<Tile> duplicatedRow = new DynamicArray<>(boardXSize);
-            for (int j = 0; j < boardXSize; j++) {
-                duplicatedRow.set(j, board.get(minRow).get(j));
+    /**
+     * Removes rows from a range and shifts the rows of the range above them down, the way clearRows() and reward() do.
+     * Rows are moved by reference; the rows freed at the top of the range are emptied.
+     * @param from the first row of the range, which must be at or above the highest tile.
+     * @param to the last row of the range.
+     * @param removed the rows to remove, in increasing order, all inside the range.
+     */
+    private void removeRows(int from, int to, int[] removed) { // O(to - from + removed * width + stack_height * width / 64)
+        int target = to;
+        int r = removed.length - 1;
+        for (int i = to; i >= from; i--) {
+            if (r >= 0 && removed[r] == i) {
+                r--;
+            } else {
+                swapRows(i, target);
+                target--;
             }
-            if(highestRowIndex > 0) {
-                for (int j = 0; j < boardXSize; j++) {
-                    board.get(highestRowIndex - 1).set(j, duplicatedRow.get(j));
+        }
+        for (int i = from; i <= target; i++) {
+            emptyRow(i);
+        }
+        counts.refresh(from, to);
+        recomputeTops();
+    }
+
+    /**
+     * Puts back rows taken out by removeRows(): the rows of the range are shifted back up by reference,
+     * which leaves the emptied rows where the removed ones were, and those are then refilled.
+     * @param from the first row of the range.
+     * @param to the last row of the range.
+     * @param removed the rows that were removed, in increasing order.
+     * @param rowBits the occupancy bitset every removed row had.
+     * @param rowColors the colors every removed row had.
+     */
+    private void restoreRows(int from, int to, int[] removed, long[][] rowBits, byte[][] rowColors) { // O(to - from + removed * width + stack_height * width / 64)
+        int above = removed.length;
+        int r = 0;
+        for (int i = from; i <= to; i++) {
+            if (r < removed.length && removed[r] == i) {
+                above--;
+                r++;
+            } else if (above > 0) {
+                swapRows(i, i + above);
+            }
+        }
+        for (int k = 0; k < removed.length; k++) {
+            fillRow(removed[k], rowBits[k], rowColors[k]);
+        }
+        counts.refresh(from, to);
+        recomputeTops();
+    }
+
+    /**
+     * Overwrites a whole row without refreshing the row index or the column tops.
+     * @param jellyTime the y-coordinate of the row.
+     * @param rowBits the new occupancy bitset, or null to empty the row.
+     * @param rowColors the new colors, or null to empty the row.
+     */
+    private void fillRow(int jellyTime, long[] rowBits, byte[] rowColors) { // O(width)
+        if (rowBits == null) {
+            emptyRow(jellyTime);
+            return;
+        }
+        own(jellyTime);
+        System.arraycopy(rowBits, 0, bits[jellyTime], 0, words);
+        for (int x = 0; x < width; x++) {
+            colors.set(jellyTime, x, rowColors[x]);
+        }
+        counts.put(jellyTime, RowScan.count(rowBits));
+        touch(jellyTime);
+    }
+
+    /**
+     * Overwrites a whole row, updating the row index and the column tops.
+     * @param jellyTime the y-coordinate of the row.
+     * @param rowBits the new occupancy bitset, or null to empty the row.
+     * @param rowColors the new colors, or null to empty the row.
+     */
+    private void replaceRow(int jellyTime, long[] rowBits, byte[] rowColors) { // O(width + log height), plus O(height) per column whose top is removed
+        long[] gone = bits[jellyTime].clone();
+        fillRow(jellyTime, rowBits, rowColors);
+        counts.refresh(jellyTime, jellyTime);
+        for (int w = 0; w < words; w++) {
+            long m = rowBits == null ? gone[w] : gone[w] & ~rowBits[w];
+            for (; m != 0; m &= m - 1) {
+                int x = (w << 6) + Long.numberOfTrailingZeros(m);
+                if (tops[x] == jellyTime) {
+                    tops[x] = scanDown(jellyTime + 1, x);
                 }
             }
         }
+        raiseTops(jellyTime);
+    }
+
+    /**
+     * Copies the occupancy bitset of a row, for a delta to put back later.
+     * @param jellyTime the y-coordinate of the row.
+     * @return the copy, or null if the row is empty.
+     */
+    private long[] saveBits(int jellyTime) { // O(width / 64)
+        return counts.get(jellyTime) == 0 ? null : bits[jellyTime].clone();
+    }
+
+    /**
+     * Copies the colors of a row, for a delta to put back later.
+     * @param jellyTime the y-coordinate of the row.
+     * @return the copy, or null if the row is empty.
+     */
+    private byte[] saveColors(int jellyTime) { // O(width)
+        if (counts.get(jellyTime) == 0) {
+            return null;
+        }
+        byte[] row = new byte[width];
+        colors.read(jellyTime, row);
+        return row;
+    }
+
+    /**
+     * Gives this board its own copy of a row that may be shared with another board.
+     * @param jellyTime the y-coordinate of the row.
+     */
+    private void own(int jellyTime) { // O(width) if the row is shared, O(1) otherwise
+        if (shared[jellyTime]) {
+            bits[jellyTime] = bits[jellyTime].clone();
+            colors.detach(jellyTime, true);
+            shared[jellyTime] = false;
+        }
+    }
+
+    /**
+     * Records that a row has changed.
+     * @param jellyTime the y-coordinate of the row.
+     */
+    private void touch(int jellyTime) { // O(1)
+        rowVersions[jellyTime] = ++version;
+    }
+
+    /**
+     * Validates a board position.
+     * @param jellyTime the y-coordinate.
+     * @param peanutButter the x-coordinate.
+     * @throws IndexOutOfBoundsException if the position is outside the board.
+     */
+    private void checkBounds(int jellyTime, int peanutButter) {
+        if (jellyTime < 0 || jellyTime >= bits.length) {
+            throw new IndexOutOfBoundsException("Invalid index: " + jellyTime);
+        }
+        if (peanutButter < 0 || peanutButter >= width) {
+            throw new IndexOutOfBoundsException("Invalid index: " + peanutButter);
+        }
+    }
+
+    /**
+     * Cells written by setTile() or consolidate(), with what they held before and after.
+     * A cell is stored as its color, or -1 when it holds no tile.
+     */
+    private final class CellWrites implements Journal.Delta
+    {
+        /**
+         * The y-coordinate of every cell.
+         */
+        private final int[] rows;
+        /**
+         * The x-coordinate of every cell.
+         */
+        private final int[] cols;
+        /**
+         * What every cell held before the write.
+         */
+        private final short[] before;
+        /**
+         * What every cell held after the write.
+         */
+        private final short[] after;
+        /**
+         * Number of cells recorded.
+         */
+        private int size;
+
+        /**
+         * Constructs an empty list of cell writes.
+         * @param capacity the most cells that will be added.
+         */
+        CellWrites(int capacity) { // O(capacity)
+            rows = new int[capacity];
+            cols = new int[capacity];
+            before = new short[capacity];
+            after = new short[capacity];
+        }
+
+        /**
+         * Adds a cell that is about to be written, saving what it holds now.
+         * @param jellyTime the y-coordinate of the cell.
+         * @param peanutButter the x-coordinate of the cell.
+         * @param t the tile about to be written, or null.
+         */
+        void add(int jellyTime, int peanutButter, Tile t) { // O(1)
+            rows[size] = jellyTime;
+            cols[size] = peanutButter;
+            boolean had = (bits[jellyTime][peanutButter >>> 6] & (1L << peanutButter)) != 0;
+            before[size] = (short) (had ? colors.get(jellyTime, peanutButter) & 0xFF : -1);
+            after[size] = (short) (t == null ? -1 : t.getColor() & 0xFF);
+            size++;
+        }
+
+        /**
+         * Puts back what every cell held before the write, latest cell first.
+         */
+        @Override
+        public void undo() { // O(cells), plus the costs of write()
+            for (int k = size - 1; k >= 0; k--) {
+                set(rows[k], cols[k], before[k] < 0 ? null : Tile.of((byte) before[k]));
+            }
+        }
+
+        /**
+         * Writes every cell again.
+         */
+        @Override
+        public void redo() { // O(cells), plus the costs of write()
+            for (int k = 0; k < size; k++) {
+                set(rows[k], cols[k], after[k] < 0 ? null : Tile.of((byte) after[k]));
+            }
+        }
+
+        /**
+         * Estimates the memory held by the saved contents.
+         * @return the estimate, in bytes.
+         */
+        @Override
+        public long bytes() { // O(1)
+            return 48 + 12L * rows.length;
+        }
+    }
+
+    /**
+     * Rows removed by clearRows() or reward(), with their contents and the range of rows shifted down over them.
+     */
+    private final class RowsRemoved implements Journal.Delta
+    {
+        /**
+         * The first row of the shifted range.
+         */
+        private final int from;
+        /**
+         * The last row of the shifted range.
+         */
+        private final int to;
+        /**
+         * The removed rows, in increasing order.
+         */
+        private final int[] removed;
+        /**
+         * The occupancy bitset of every removed row.
+         */
+        private final long[][] rowBits;
+        /**
+         * The colors of every removed row.
+         */
+        private final byte[][] rowColors;
+
+        /**
+         * Saves rows that are about to be removed.
+         * @param from the first row of the range that will shift.
+         * @param to the last row of the range that will shift.
+         * @param removed the rows about to be removed, in increasing order.
+         */
+        RowsRemoved(int from, int to, int[] removed) { // O(removed * width)
+            this.from = from;
+            this.to = to;
+            this.removed = removed;
+            rowBits = new long[removed.length][];
+            rowColors = new byte[removed.length][];
+            for (int k = 0; k < removed.length; k++) {
+                rowBits[k] = saveBits(removed[k]);
+                rowColors[k] = saveColors(removed[k]);
+            }
+        }
+
+        /**
+         * Shifts the range back up and puts the removed rows back.
+         */
+        @Override
+        public void undo() { // O(to - from + removed * width + stack_height * width / 64)
+            restoreRows(from, to, removed, rowBits, rowColors);
+        }
+
+        /**
+         * Removes the rows again and shifts the range down over them.
+         */
+        @Override
+        public void redo() { // O(to - from + removed * width + stack_height * width / 64)
+            removeRows(from, to, removed);
+        }
+
+        /**
+         * Estimates the memory held by the saved contents.
+         * @return the estimate, in bytes.
+         */
+        @Override
+        public long bytes() { // O(1)
+            return 64 + removed.length * (36L + 8L * words + width);
+        }
+    }
+
+    /**
+     * A row overwritten by penalize(), with its contents before and after.
+     */
+    private final class RowWritten implements Journal.Delta
+    {
+        /**
+         * The y-coordinate of the row.
+         */
+        private final int row;
+        /**
+         * The occupancy bitset of the row before the write, or null if it was empty.
+         */
+        private final long[] beforeBits;
+        /**
+         * The colors of the row before the write, or null if it was empty.
+         */
+        private final byte[] beforeColors;
+        /**
+         * The occupancy bitset of the row after the write, or null if it is empty.
+         */
+        private final long[] afterBits;
+        /**
+         * The colors of the row after the write, or null if it is empty.
+         */
+        private final byte[] afterColors;
+
+        /**
+         * Saves a row that is about to be overwritten with a copy of another row.
+         * @param row the y-coordinate of the row to be overwritten.
+         * @param source the y-coordinate of the row to be copied.
+         */
+        RowWritten(int row, int source) { // O(width)
+            this.row = row;
+            beforeBits = saveBits(row);
+            beforeColors = saveColors(row);
+            afterBits = saveBits(source);
+            afterColors = saveColors(source);
+        }
+
+        /**
+         * Puts back what the row held before the write.
+         */
+        @Override
+        public void undo() { // O(width + log height), plus O(height) per column whose top is removed
+            replaceRow(row, beforeBits, beforeColors);
+        }
+
+        /**
+         * Writes the row again.
+         */
+        @Override
+        public void redo() { // O(width + log height), plus O(height) per column whose top is removed
+            replaceRow(row, afterBits, afterColors);
+        }
+
+        /**
+         * Estimates the memory held by the saved contents.
+         * @return the estimate, in bytes.
+         */
+        @Override
+        public long bytes() { // O(1)
+            return 80 + 2 * (16L + 8L * words + width);
+        }
     }
 }
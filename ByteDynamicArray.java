@@ -0,0 +1,61 @@
+/**
+ * A dynamic array implementation that stores byte values directly,
+ * without boxing them into objects as DynamicArray would.
+ */
+
+public class ByteDynamicArray {
+
+    /**
+     * Fixed size array of byte values.
+     */
+    private byte[] arr;
+    /**
+     * Size that arr will be initialized to.
+     */
+    private int size;
+
+    /**
+     * Constructs a new dynamic array with the specified size, with every value set to 0.
+     * @param size the size of the array.
+     */
+    public ByteDynamicArray(int size) {
+        arr = new byte[size];
+        this.size = size;
+    }
+
+    /**
+     * Sets the value at the specified index in the array.
+     * @param index the index of the value to be set.
+     * @param value the value to be set.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public void set(int index, byte value) {
+        if (index >= 0 && index < size) {
+            arr[index] = value;
+        } else {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+    }
+
+    /**
+     * Returns the value at the specified index in the array.
+     * @param index the index of the value to be returned.
+     * @return the value at the specified index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public byte get(int index) {
+        if (index >= 0 && index < size) {
+            return arr[index];
+        } else {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+    }
+
+    /**
+     * Returns the size of the array.
+     * @return the size of the array.
+     */
+    public int size() {
+        return size;
+    }
+}
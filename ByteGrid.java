@@ -0,0 +1,97 @@
+import java.util.Arrays;
+
+/**
+ * A fixed-size two-dimensional grid of byte values.
+ * All cells live in one contiguous array in row-major order, so a cell costs one byte
+ * and a lookup is a single index computation instead of two object dereferences.
+ */
+
+public class ByteGrid {
+
+    /**
+     * The cells of the grid, row after row.
+     */
+    private byte[] arr;
+    /**
+     * Number of rows in the grid.
+     */
+    private int height;
+    /**
+     * Number of columns in the grid.
+     */
+    private int width;
+
+    /**
+     * Constructs a new grid with the specified dimensions, with every value set to 0.
+     * @param height the number of rows.
+     * @param width the number of columns.
+     */
+    public ByteGrid(int height, int width) {
+        arr = new byte[height * width];
+        this.height = height;
+        this.width = width;
+    }
+
+    /**
+     * Sets the value at the specified cell of the grid.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @param value the value to be set.
+     * @throws IndexOutOfBoundsException if the cell is out of range.
+     */
+    public void set(int row, int col, byte value) {
+        arr[index(row, col)] = value;
+    }
+
+    /**
+     * Returns the value at the specified cell of the grid.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return the value at the specified cell.
+     * @throws IndexOutOfBoundsException if the cell is out of range.
+     */
+    public byte get(int row, int col) {
+        return arr[index(row, col)];
+    }
+
+    /**
+     * Sets every cell of the grid to the same value.
+     * @param value the value to be set.
+     */
+    public void fill(byte value) {
+        Arrays.fill(arr, value);
+    }
+
+    /**
+     * Returns the number of rows in the grid.
+     * @return the height of the grid.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of columns in the grid.
+     * @return the width of the grid.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Computes the position of a cell in the backing array.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return the index of the cell.
+     * @throws IndexOutOfBoundsException if the cell is out of range.
+     */
+    private int index(int row, int col) {
+        if (row < 0 || row >= height) {
+            throw new IndexOutOfBoundsException("Invalid index: " + row);
+        }
+        if (col < 0 || col >= width) {
+            throw new IndexOutOfBoundsException("Invalid index: " + col);
+        }
+        return row * width + col;
+    }
+}
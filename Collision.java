@@ -0,0 +1,86 @@
+/**
+ * A utility class that answers "does this block fit here" questions with row bitmasks.
+ * A block is described by one bitmask per row, and a placement is tested by AND-ing
+ * each mask, shifted to the block's x-coordinate, against the matching board row.
+ */
+public class Collision {
+
+    /**
+     * Transform id for the block as it currently stands.
+     */
+    public static final int NONE = 0;
+    /**
+     * Transform id for the block rotated 90 degrees clockwise.
+     */
+    public static final int ROTATE = 1;
+    /**
+     * Transform id for the block flipped vertically.
+     */
+    public static final int FLIP_VERTICAL = 2;
+    /**
+     * Transform id for the block flipped horizontally.
+     */
+    public static final int FLIP_HORIZONTAL = 3;
+
+    /**
+     * Checks if a block shape fits on the board with its top-left corner at the given position.
+     * @param board the game board.
+     * @param masks the row bitmasks of the block.
+     * @param jellyTime the top-left y-coordinate to test.
+     * @param peanutButter the top-left x-coordinate to test.
+     * @return true if every tile lands inside the board on an empty cell, false otherwise.
+     */
+    public static boolean fits(Board board, long[][] masks, int jellyTime, int peanutButter) { // O(block_size / 64)
+        return fits(board, masks, 0, masks.length - 1, jellyTime, peanutButter);
+    }
+
+    /**
+     * Checks if a block shape fits on the board, looking only at the rows that can hold tiles.
+     * @param board the game board.
+     * @param masks the row bitmasks of the block.
+     * @param first the first row of the block that can hold a tile.
+     * @param last the last row of the block that can hold a tile.
+     * @param jellyTime the top-left y-coordinate to test.
+     * @param peanutButter the top-left x-coordinate to test.
+     * @return true if every tile lands inside the board on an empty cell, false otherwise.
+     */
+    public static boolean fits(Board board, long[][] masks, int first, int last, int jellyTime, int peanutButter) { // O((last - first) * block_size / 64)
+        for (int i = first; i <= last; i++) {
+            if (isEmpty(masks[i])) {
+                continue;
+            }
+            int row = i + jellyTime;
+            if (row < 0 || row >= board.getHeight() || !board.fitsRow(row, masks[i], peanutButter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a block fits on the board after a transform, looking only at its occupied rows.
+     * @param board the game board.
+     * @param block the block to test.
+     * @param transform one of NONE, ROTATE, FLIP_VERTICAL or FLIP_HORIZONTAL.
+     * @param jellyTime the top-left y-coordinate to test.
+     * @param peanutButter the top-left x-coordinate to test.
+     * @return true if every tile lands inside the board on an empty cell, false otherwise.
+     */
+    public static boolean fits(Board board, Block block, int transform, int jellyTime, int peanutButter) { // O(occupied_rows * block_size / 64)
+        return fits(board, block.getRowMasks(transform), block.firstRow(transform), block.lastRow(transform), jellyTime, peanutButter);
+    }
+
+    /**
+     * Checks if a row bitmask has no bits set.
+     * @param mask the row bitmask.
+     * @return true if the row holds no tiles, false otherwise.
+     */
+    private static boolean isEmpty(long[] mask) {
+        for (long word : mask) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
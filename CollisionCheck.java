@@ -0,0 +1,422 @@
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the bitmask placement checks in Tetris answer exactly like the original cell-by-cell ones.
+ * The original predicates are kept here, reading the board and block one tile at a time through getTile(),
+ * and both versions are asked about random blocks in random orientations on random boards.
+ * Where an original predicate read outside the board and threw, its answer is taken as false,
+ * which is what the bitmask version answers.
+ */
+public class CollisionCheck
+{
+    /**
+     * Number of predicates compared.
+     */
+    private static final int PREDICATES = 9;
+    /**
+     * Names of the predicates, in the order they are compared.
+     */
+    private static final String[] NAMES = {
+        "isGameOver", "canMoveLeft", "canMoveRight", "canDrop", "canRotate",
+        "canflipVertical", "canflipHorizontal", "canScaleUp", "canScaleDown"
+    };
+
+    /**
+     * Runs the check and exits with status 1 if any answer differs.
+     * @param args optional: the number of boards and the seed.
+     */
+    public static void main(String[] args)
+    {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        SplittableRandom rand = new SplittableRandom(seed);
+        long[] compared = new long[PREDICATES];
+        long mismatches = 0;
+        for (int n = 0; n < boards; n++) {
+            int height = 4 + rand.nextInt(40);
+            int width = 4 + rand.nextInt(n % 4 == 0 ? 200 : 20);
+            Board board = board(height, width, rand);
+            for (int k = 0; k < 50; k++) {
+                Block block = block(rand, 2 + rand.nextInt(n % 8 == 0 ? 70 : 7));
+                int size = block.getSize();
+                for (int t = 0; t < 20; t++) {
+                    int jellyTime = rand.nextInt(height + size) - size;
+                    int peanutButter = rand.nextInt(width + size) - size;
+                    Block placed = moved(block, jellyTime, peanutButter);
+                    boolean[] expected = new boolean[PREDICATES];
+                    boolean[] actual = new boolean[PREDICATES];
+                    expected[0] = isGameOver(board, placed);
+                    actual[0] = Tetris.isGameOver(board, placed);
+                    int count = 1;
+                    if (!expected[0]) {
+                        expected[1] = answer(() -> canMoveLeft(board, placed));
+                        expected[2] = answer(() -> canMoveRight(board, placed));
+                        expected[3] = answer(() -> canDrop(board, placed));
+                        expected[4] = answer(() -> canRotate(board, placed));
+                        expected[5] = answer(() -> canflipVertical(board, placed));
+                        expected[6] = answer(() -> canflipHorizontal(board, placed));
+                        expected[7] = answer(() -> canScaleUp(board, placed));
+                        expected[8] = answer(() -> canScaleDown(board, placed));
+                        actual[1] = Tetris.canMoveLeft(board, placed);
+                        actual[2] = Tetris.canMoveRight(board, placed);
+                        actual[3] = Tetris.canDrop(board, placed);
+                        actual[4] = Tetris.canRotate(board, placed);
+                        actual[5] = Tetris.canflipVertical(board, placed);
+                        actual[6] = Tetris.canflipHorizontal(board, placed);
+                        actual[7] = Tetris.canScaleUp(board, placed);
+                        actual[8] = Tetris.canScaleDown(board, placed);
+                        count = PREDICATES;
+                    }
+                    for (int p = 0; p < count; p++) {
+                        compared[p]++;
+                        if (expected[p] != actual[p]) {
+                            mismatches++;
+                            if (mismatches <= 10) {
+                                System.out.printf("%s differs: board %dx%d, block size %d at (%d, %d), expected %b%n",
+                                    NAMES[p], height, width, size, placed.getY(), placed.getX(), expected[p]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (int p = 0; p < PREDICATES; p++) {
+            System.out.printf("%-18s %10d compared%n", NAMES[p], compared[p]);
+        }
+        System.out.println(mismatches == 0 ? "OK" : mismatches + " mismatches");
+        if (mismatches != 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A predicate of the original implementation, which may throw where it read outside the board.
+     */
+    private interface Predicate
+    {
+        /**
+         * Asks the predicate.
+         * @return its answer.
+         */
+        boolean test();
+    }
+
+    /**
+     * Asks an original predicate, taking a read outside the board as a no.
+     * @param predicate the predicate.
+     * @return its answer, or false if it threw.
+     */
+    private static boolean answer(Predicate predicate)
+    {
+        try {
+            return predicate.test();
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies a block to a new position, keeping its tiles and orientation.
+     * @param source the block to copy.
+     * @param jellyTime the new top-left y-coordinate.
+     * @param peanutButter the new top-left x-coordinate.
+     * @return the moved copy.
+     */
+    private static Block moved(Block source, int jellyTime, int peanutButter)
+    {
+        Block block = source.copy();
+        block.drop(jellyTime - block.getY());
+        while (block.getX() < peanutButter) {
+            block.moveRight();
+        }
+        while (block.getX() > peanutButter) {
+            block.moveLeft();
+        }
+        return block;
+    }
+
+    /**
+     * Builds a random board: every row is empty, full or filled to a random density.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @param rand the random source.
+     * @return the board.
+     */
+    private static Board board(int height, int width, SplittableRandom rand)
+    {
+        Board board = new Board(height, width);
+        for (int y = rand.nextInt(height); y < height; y++) {
+            int density = rand.nextInt(12);
+            for (int x = 0; x < width; x++) {
+                if (density > 10 || rand.nextInt(10) < density) {
+                    board.setTile(y, x, Tile.of((byte) (1 + rand.nextInt(Engine.COLORS - 1))));
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Builds a random block in a random one of its 8 orientations, sometimes thinned out to a few tiles.
+     * @param rand the random source.
+     * @param size the size of the block.
+     * @return the block.
+     */
+    private static Block block(SplittableRandom rand, int size)
+    {
+        Block block = new Block(0, 0, size, (byte) (1 + rand.nextInt(Engine.COLORS - 1)), rand);
+        if (rand.nextBoolean()) {
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    if (rand.nextInt(4) != 0) {
+                        block.setTile(i, j, null);
+                    }
+                }
+            }
+        }
+        if (rand.nextBoolean()) {
+            block.rotate();
+        }
+        if (rand.nextBoolean()) {
+            block.flipVertical();
+        }
+        if (rand.nextBoolean()) {
+            block.flipHorizontal();
+        }
+        return block;
+    }
+
+    /**
+     * Reads a cell of a block as the original transform copies did.
+     * @param block the block.
+     * @param transform one of the Collision transform ids.
+     * @param i the row of the cell after the transform.
+     * @param j the column of the cell after the transform.
+     * @return the tile, or null.
+     */
+    private static Tile transformed(Block block, int transform, int i, int j)
+    {
+        int size = block.getSize();
+        switch (transform) {
+            case Collision.ROTATE:
+                return block.getTile(size - 1 - j, i);
+            case Collision.FLIP_VERTICAL:
+                return block.getTile(size - 1 - i, j);
+            case Collision.FLIP_HORIZONTAL:
+                return block.getTile(i, size - 1 - j);
+            default:
+                return block.getTile(i, j);
+        }
+    }
+
+    /**
+     * The original canMoveLeft.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can move left, false otherwise.
+     */
+    private static boolean canMoveLeft(Board board, Block block)
+    {
+        int size = block.getSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (block.getTile(i, j) != null) {
+                    if (j + block.getX() == 0 || board.getTile(i + block.getY(), j + block.getX() - 1) != null) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The original canMoveRight.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can move right, false otherwise.
+     */
+    private static boolean canMoveRight(Board board, Block block)
+    {
+        int size = block.getSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (block.getTile(i, j) != null) {
+                    if (j + block.getX() == board.getWidth() - 1 || board.getTile(i + block.getY(), j + block.getX() + 1) != null) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The original checkBoundaries, reading the transformed block in place of the copy it was given.
+     * @param board the game board.
+     * @param block the block.
+     * @param transform one of the Collision transform ids.
+     * @return true if the transformed block fits where the block is, false otherwise.
+     */
+    private static boolean checkBoundaries(Board board, Block block, int transform)
+    {
+        int size = block.getSize();
+        int jellyTime = block.getY();
+        int peanutButter = block.getX();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (transformed(block, transform, i, j) != null) {
+                    if (i + jellyTime >= board.getHeight() || i + jellyTime < 0 || j + peanutButter >= board.getWidth() || j + peanutButter < 0 || board.getTile(i + jellyTime, j + peanutButter) != null) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The original canRotate.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can be rotated, false otherwise.
+     */
+    private static boolean canRotate(Board board, Block block)
+    {
+        return checkBoundaries(board, block, Collision.ROTATE);
+    }
+
+    /**
+     * The original canflipVertical.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can be flipped vertically, false otherwise.
+     */
+    private static boolean canflipVertical(Board board, Block block)
+    {
+        return checkBoundaries(board, block, Collision.FLIP_VERTICAL);
+    }
+
+    /**
+     * The original canflipHorizontal.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can be flipped horizontally, false otherwise.
+     */
+    private static boolean canflipHorizontal(Board board, Block block)
+    {
+        return checkBoundaries(board, block, Collision.FLIP_HORIZONTAL);
+    }
+
+    /**
+     * The original canScaleDown.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can be scaled down, false otherwise.
+     */
+    private static boolean canScaleDown(Board board, Block block)
+    {
+        int size = block.getSize();
+        if (size <= 2) {
+            return false;
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (block.getTile(i, j) != null) {
+                    count++;
+                }
+            }
+        }
+        if (count <= 2) {
+            return false;
+        }
+        int scaledSize = size / 2;
+        int minX = Math.max(block.getX(), 0);
+        int minY = Math.max(block.getY(), 0);
+        int maxX = Math.min(block.getX() + scaledSize - 1, board.getWidth() - 1);
+        int maxY = Math.min(block.getY() + scaledSize - 1, board.getHeight() - 1);
+        for (int i = minY; i <= maxY; i++) {
+            for (int j = minX; j <= maxX; j++) {
+                if (board.getTile(i, j) != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The original canScaleUp.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can be scaled up, false otherwise.
+     */
+    private static boolean canScaleUp(Board board, Block block)
+    {
+        int currentSize = block.getSize();
+        int peanutButter = block.getX();
+        int jellyTime = block.getY();
+        int newX = peanutButter + currentSize * 2 - 1;
+        int newY = jellyTime + currentSize * 2 - 1;
+        if (newX >= board.getWidth() || newY >= board.getHeight()) {
+            return false;
+        }
+        for (int i = jellyTime; i <= newY; i++) {
+            for (int j = peanutButter; j <= newX; j++) {
+                if (j < peanutButter + currentSize && i < jellyTime + currentSize) {
+                    if (block.getTile(i - jellyTime, j - peanutButter) != null && board.getTile(i, j) != null) {
+                        return false;
+                    }
+                } else if (board.getTile(i, j) != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The original canDrop.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block can be dropped, false otherwise.
+     */
+    private static boolean canDrop(Board board, Block block)
+    {
+        int size = block.getSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (block.getTile(i, j) != null) {
+                    if (i + block.getY() == board.getHeight() - 1 || board.getTile(i + block.getY() + 1, j + block.getX()) != null) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The original isGameOver.
+     * @param board the game board.
+     * @param block the block.
+     * @return true if the block does not fit where it is, false otherwise.
+     */
+    private static boolean isGameOver(Board board, Block block)
+    {
+        int size = block.getSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (block.getTile(i, j) != null) {
+                    int y = i + block.getY();
+                    int x = j + block.getX();
+                    if (y < 0 || y >= board.getHeight() || x < 0 || x >= board.getWidth() || board.getTile(y, x) != null) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Storage for the tile colors of a board, one byte per cell, with rows that can be moved and shared cheaply.
+ * Board keeps occupancy and row counts itself; a plane only holds colors, so it can live on the heap or off it.
+ */
+public interface ColorPlane
+{
+    /**
+     * Gets the color of a cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return the color of the cell.
+     */
+    byte get(int row, int col);
+
+    /**
+     * Sets the color of a cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @param color the new color.
+     */
+    void set(int row, int col, byte color);
+
+    /**
+     * Copies the colors of a row into an array.
+     * @param row the row.
+     * @param dst receives the colors; it must hold at least one byte per column.
+     */
+    void read(int row, byte[] dst);
+
+    /**
+     * Exchanges two rows.
+     * @param a the first row.
+     * @param b the second row.
+     */
+    void swap(int a, int b);
+
+    /**
+     * Sets every cell of a row to color 0.
+     * @param row the row.
+     */
+    void clear(int row);
+
+    /**
+     * Copies the colors of one row over another.
+     * @param from the row to copy.
+     * @param to the row to overwrite.
+     */
+    void copy(int from, int to);
+
+    /**
+     * Gives this plane its own copy of a row that may be shared with another plane.
+     * @param row the row.
+     * @param keep whether the contents must be kept; if not, the row comes back all color 0.
+     */
+    void detach(int row, boolean keep);
+
+    /**
+     * Creates a plane with the same colors that shares rows with this one where it can.
+     * Shared rows must be detached by either plane before it writes to them.
+     * @return the new plane.
+     */
+    ColorPlane share();
+
+    /**
+     * Writes the colors to durable storage, if the plane has any.
+     */
+    void force();
+}
@@ -0,0 +1,71 @@
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * A seeded random source that counts its draws, so its state can be saved as (seed, draws)
+ * and restored later, for example from a replay keyframe.
+ * Every value is derived from nextLong(), so the count covers bounded and typed draws as well.
+ */
+public class CountingRandom implements RandomGenerator
+{
+    /**
+     * The generator every draw comes from.
+     */
+    private SplittableRandom rand;
+    /**
+     * The seed the generator started from.
+     */
+    private long seed;
+    /**
+     * Number of nextLong() draws taken so far.
+     */
+    private long draws;
+
+    /**
+     * Constructs a random source that has not drawn anything yet.
+     * @param seed the seed.
+     */
+    public CountingRandom(long seed) { // O(1)
+        this(seed, 0);
+    }
+
+    /**
+     * Constructs a random source positioned after a number of draws from a seed.
+     * @param seed the seed.
+     * @param draws the number of draws to skip.
+     */
+    public CountingRandom(long seed, long draws) { // O(draws)
+        this.rand = new SplittableRandom(seed);
+        this.seed = seed;
+        for (long i = 0; i < draws; i++) {
+            rand.nextLong();
+        }
+        this.draws = draws;
+    }
+
+    /**
+     * Draws the next value.
+     * @return a uniformly distributed long.
+     */
+    @Override
+    public long nextLong() { // O(1)
+        draws++;
+        return rand.nextLong();
+    }
+
+    /**
+     * Gets the seed the generator started from.
+     * @return the seed.
+     */
+    public long getSeed() { // O(1)
+        return seed;
+    }
+
+    /**
+     * Gets the number of draws taken so far.
+     * @return the draw count.
+     */
+    public long getDraws() { // O(1)
+        return draws;
+    }
+}
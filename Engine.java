@@ -0,0 +1,427 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * A headless Tetris game: the board, the falling block and the rules that move them.
+ * It runs the same steps as the Swing game, but only when step() is called,
+ * so it can be driven as fast as the CPU allows and replayed from a seed.
+ * With a Journal (see setJournal()) every action becomes one step that can be undone and redone.
+ * Only a metered game (see setMetered()) is counted in Metrics, so that the games played by batches, servers and planners
+ * do not mix into the figures of the game on screen.
+ */
+public class Engine
+{
+    /**
+     * Number of colors in the palette; color 0 is the empty background.
+     */
+    public static final int COLORS = 10;
+    /**
+     * The tetris game board itself.
+     */
+    private Board board;
+    /**
+     * The block that is currently falling.
+     */
+    private Block block;
+    /**
+     * Random source for block colors and shapes, owned by this game alone.
+     */
+    private RandomGenerator rand;
+    /**
+     * Whether the game has ended.
+     */
+    private boolean over;
+    /**
+     * Number of clock ticks applied so far.
+     */
+    private long ticks;
+    /**
+     * Number of blocks spawned so far, including the first one.
+     */
+    private long pieces;
+    /**
+     * Number of rows removed by clearRows so far.
+     */
+    private long rowsCleared;
+    /**
+     * Where changes are recorded so they can be undone, or null if they are not recorded.
+     */
+    private Journal journal;
+    /**
+     * Whether the game's spawns, cleared rows, rewards, penalties, rejected actions and consolidate times are counted in Metrics.
+     */
+    private boolean metered;
+
+    /**
+     * Constructs a game with an empty board and a first block, seeded for reproducible play.
+     * The random source counts its draws, so a recorded game can be restored from a keyframe.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @param seed the seed for block colors and shapes.
+     */
+    public Engine(int height, int width, long seed) {
+        this(height, width, new CountingRandom(seed));
+    }
+
+    /**
+     * Constructs a game with an empty board and a first block.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @param rand the random source for block colors and shapes; it must not be shared with other games.
+     */
+    public Engine(int height, int width, RandomGenerator rand) {
+        this(new Board(height, width), rand);
+    }
+
+    /**
+     * Constructs a game on an empty board of any kind, for example one made with Board.sparse(), and a first block.
+     * @param board the empty board, which the game takes over.
+     * @param rand the random source for block colors and shapes; it must not be shared with other games.
+     */
+    public Engine(Board board, RandomGenerator rand) {
+        this.board = board;
+        this.rand = rand;
+        this.block = spawn();
+    }
+
+    /**
+     * Restores a game from saved state, for example a replay keyframe.
+     * @param board the board, which the game takes over.
+     * @param block the falling block, which the game takes over.
+     * @param rand the random source, positioned where the saved game left it.
+     * @param ticks the number of clock ticks applied so far.
+     * @param pieces the number of blocks spawned so far.
+     * @param rowsCleared the number of rows cleared so far.
+     */
+    public Engine(Board board, Block block, RandomGenerator rand, long ticks, long pieces, long rowsCleared) {
+        this.board = board;
+        this.block = block;
+        this.rand = rand;
+        this.ticks = ticks;
+        this.pieces = pieces;
+        this.rowsCleared = rowsCleared;
+        this.over = Tetris.isGameOver(board, block);
+    }
+
+    /**
+     * Starts or stops recording the changes the game makes, one journal step per action.
+     * The board and the falling block record into the same journal, and so does every block spawned later.
+     * The random source is not rewound by undo(): redoing plays the recorded blocks again,
+     * but new actions after an undo draw the blocks that would have come next.
+     * @param journal where to record changes, or null to stop recording.
+     */
+    public void setJournal(Journal journal) { // O(1)
+        this.journal = journal;
+        board.setJournal(journal);
+        block.setJournal(journal);
+    }
+
+    /**
+     * Starts or stops counting the game in Metrics.
+     * A game is not counted unless this is called; the game loop turns it on for the game it runs.
+     * @param metered true to count the game, false to stop.
+     */
+    public void setMetered(boolean metered) { // O(1)
+        this.metered = metered;
+    }
+
+    /**
+     * Gets the game board.
+     * @return the game board.
+     */
+    public Board getBoard() { // O(1)
+        return board;
+    }
+
+    /**
+     * Gets the block that is currently falling.
+     * @return the current block.
+     */
+    public Block getBlock() { // O(1)
+        return block;
+    }
+
+    /**
+     * Checks if the game is over.
+     * @return true if the last tick left a block that does not fit on the board, false otherwise.
+     */
+    public boolean isGameOver() { // O(1)
+        return over;
+    }
+
+    /**
+     * Gets the number of clock ticks applied so far.
+     * @return the tick count.
+     */
+    public long getTicks() { // O(1)
+        return ticks;
+    }
+
+    /**
+     * Gets the number of blocks spawned so far, including the first one.
+     * @return the piece count.
+     */
+    public long getPieces() { // O(1)
+        return pieces;
+    }
+
+    /**
+     * Gets the number of complete rows cleared so far.
+     * @return the cleared row count.
+     */
+    public long getRowsCleared() { // O(1)
+        return rowsCleared;
+    }
+
+    /**
+     * Applies one action to the game, following the same rules as the keys and clock of Game.
+     * Actions are ignored once the game is over.
+     * A scale down is also refused when the smaller block would leave the board or overlap tiles:
+     * canScaleDown only checks a size/2 square, and such a block could never be consolidated.
+     * @param action the action to apply.
+     * @return true if the board or block changed, false otherwise.
+     */
+    public boolean step(Action action) { // O(block_size) for moves, O(board_size / 64) for ticks and scaling
+        if (over) {
+            return false;
+        }
+        if (journal == null) {
+            return apply(action);
+        }
+        Turnover turnover = new Turnover();
+        boolean changed = apply(action);
+        if (turnover.changed()) {
+            journal.record(turnover);
+        }
+        journal.mark();
+        return changed;
+    }
+
+    /**
+     * Applies one action to a game that is not over.
+     * @param action the action to apply.
+     * @return true if the board or block changed, false otherwise.
+     */
+    private boolean apply(Action action) { // O(block_size) for moves, O(board_size / 64) for ticks and scaling
+        switch (action) {
+            case LEFT:
+                if (allowed(Tetris.canMoveLeft(board, block))) {
+                    block.moveLeft();
+                    return true;
+                }
+                return false;
+            case RIGHT:
+                if (allowed(Tetris.canMoveRight(board, block))) {
+                    block.moveRight();
+                    return true;
+                }
+                return false;
+            case FLIP_VERTICAL:
+                if (allowed(Tetris.canflipVertical(board, block))) {
+                    block.flipVertical();
+                    return true;
+                }
+                return false;
+            case FLIP_HORIZONTAL:
+                if (allowed(Tetris.canflipHorizontal(board, block))) {
+                    block.flipHorizontal();
+                    return true;
+                }
+                return false;
+            case ROTATE:
+                if (allowed(Tetris.canRotate(board, block))) {
+                    block.rotate();
+                    return true;
+                }
+                return false;
+            case SCALE_DOWN:
+                if (allowed(Tetris.canScaleDown(board, block))) {
+                    Block scaled = block.scaleDown();
+                    if (allowed(!Tetris.isGameOver(board, scaled))) {
+                        block = scaled;
+                        board.penalize();
+                        if (metered) {
+                            Metrics.penalized();
+                        }
+                        return true;
+                    }
+                }
+                return false;
+            case SCALE_UP:
+                if (allowed(Tetris.canScaleUp(board, block))) {
+                    block = block.scaleUp();
+                    board.reward();
+                    if (metered) {
+                        Metrics.rewarded();
+                    }
+                    return true;
+                }
+                return false;
+            case DROP:
+                if (allowed(Tetris.canDrop(board, block))) {
+                    block.drop();
+                    return true;
+                }
+                return false;
+            case TICK:
+                tick();
+                return true;
+            case HARD_DROP:
+                block.drop(Tetris.dropDistance(board, block));
+                lock();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Passes on whether a check lets an action go ahead, counting a refusal in Metrics if the game is metered.
+     * Only checks that can refuse an action go through here;
+     * the drop check of a clock tick, which locks the block instead, does not.
+     * @param allowed whether the check lets the action go ahead.
+     * @return the same answer.
+     */
+    private boolean allowed(boolean allowed) { // O(1)
+        return metered ? Metrics.check(allowed) : allowed;
+    }
+
+    /**
+     * Advances the game clock: drops the block, or locks it.
+     */
+    private void tick() { // O(board_size / 64)
+        ticks++;
+        if (Tetris.canDrop(board, block)) {
+            block.drop();
+        } else {
+            lock();
+        }
+    }
+
+    /**
+     * Locks the block into the board, clears rows and spawns the next block, ending the game if it does not fit.
+     */
+    private void lock() { // O(board_size / 64)
+        long start = metered ? Metrics.start() : 0;
+        board.consolidate(block);
+        Metrics.consolidateDone(start);
+        int cleared = board.clearRows();
+        if (metered) {
+            Metrics.rowsCleared(cleared);
+        }
+        rowsCleared += cleared;
+        block = spawn();
+        if (Tetris.isGameOver(board, block)) {
+            over = true;
+        }
+    }
+
+    /**
+     * Creates a new block at the spawn position.
+     * @return the new block.
+     */
+    private Block spawn() { // O(1)
+        pieces++;
+        if (metered) {
+            Metrics.pieceSpawned();
+        }
+        Block spawned = new Block(0, 3, 3, (byte) (1 + rand.nextInt(COLORS - 1)), rand);
+        spawned.setJournal(journal);
+        return spawned;
+    }
+
+    /**
+     * The parts of the game an action may replace rather than change: the falling block, the counters and the game over flag.
+     * Constructed before the action, it saves their values; changed() then saves the values the action left.
+     */
+    private final class Turnover implements Journal.Delta
+    {
+        /**
+         * The falling block before the action.
+         */
+        private final Block beforeBlock = block;
+        /**
+         * The clock tick count before the action.
+         */
+        private final long beforeTicks = ticks;
+        /**
+         * The piece count before the action.
+         */
+        private final long beforePieces = pieces;
+        /**
+         * The cleared row count before the action.
+         */
+        private final long beforeRowsCleared = rowsCleared;
+        /**
+         * Whether the game was over before the action.
+         */
+        private final boolean beforeOver = over;
+        /**
+         * The falling block after the action.
+         */
+        private Block afterBlock;
+        /**
+         * The clock tick count after the action.
+         */
+        private long afterTicks;
+        /**
+         * The piece count after the action.
+         */
+        private long afterPieces;
+        /**
+         * The cleared row count after the action.
+         */
+        private long afterRowsCleared;
+        /**
+         * Whether the game was over after the action.
+         */
+        private boolean afterOver;
+
+        /**
+         * Saves the values the action left and compares them with the ones before it.
+         * @return true if any of them changed, false otherwise.
+         */
+        boolean changed() { // O(1)
+            afterBlock = block;
+            afterTicks = ticks;
+            afterPieces = pieces;
+            afterRowsCleared = rowsCleared;
+            afterOver = over;
+            return afterBlock != beforeBlock || afterTicks != beforeTicks || afterPieces != beforePieces
+                || afterRowsCleared != beforeRowsCleared || afterOver != beforeOver;
+        }
+
+        /**
+         * Puts back the values from before the action.
+         */
+        @Override
+        public void undo() { // O(1)
+            block = beforeBlock;
+            ticks = beforeTicks;
+            pieces = beforePieces;
+            rowsCleared = beforeRowsCleared;
+            over = beforeOver;
+        }
+
+        /**
+         * Puts back the values the action left.
+         */
+        @Override
+        public void redo() { // O(1)
+            block = afterBlock;
+            ticks = afterTicks;
+            pieces = afterPieces;
+            rowsCleared = afterRowsCleared;
+            over = afterOver;
+        }
+
+        /**
+         * Estimates the memory held by the record, including a replaced block.
+         * @return the estimate, in bytes.
+         */
+        @Override
+        public long bytes() { // O(1)
+            int size = afterBlock == beforeBlock ? 0 : afterBlock.getSize();
+            return 72 + 2L * size * size;
+        }
+    }
+}
@@ -2,100 +2,145 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.IOException;
+import java.nio.file.Paths;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
-import java.util.Random;
 
 /**
  * A class representing a game.
+ * The rules live in Engine, driven by a GameLoop; this class only queues keys for the loop
+ * and draws the snapshots it publishes.
+ * The game's metrics are published over JMX as tetris:type=Metrics; they are collected when
+ * -Dtetris.metrics=true is given or once they are enabled from JConsole.
  */
 public final class Game extends JPanel
 {
     /**
-     * The tetris Game board itself.
+     * Ticks per second of the loop when none is given.
      */
-    private static Board board;
+    private static final int DEFAULT_TICK_RATE = 60;
     /**
-     * The block used in the tetris game.
+     * Number of pieces between two keyframes of a replay log.
      */
-    private static Block block;
+    private static final int KEYFRAME_EVERY = 50;
     /**
-     * Random variable used in code.
+     * The loop running the game being shown.
      */
-    private static Random rand = new Random();
+    private static GameLoop loop;
     /**
-     * Options for colors of the block.
+     * Options for colors of the block; there is one entry per Engine color.
      */
     private final static Color[] color = {
         Color.black, Color.red, Color.green, Color.blue, Color.cyan, Color.magenta, Color.orange, Color.yellow, Color.pink, Color.white
     };
 
     /**
-     * Paints the game board and block.
+     * Draws the game, redrawing only the regions that changed.
+     */
+    private static final Renderer renderer = new Renderer(color);
+    /**
+     * Title of the window, followed by the frame statistics.
+     */
+    private static final String TITLE = "CS310 - Spring 2024 - Project 1";
+    /**
+     * The window showing the game.
+     */
+    private static JFrame window;
+    /**
+     * Frame statistics currently shown in the window title.
+     */
+    private String shownStats;
+
+    /**
+     * Paints the game board and block inside the current clip.
      * @param g the graphics object.
      */
     @Override 
     public void paintComponent(Graphics g)
     {
-        drawBoard(g);
-        drawBlock(g);
+        long start = Metrics.start();
+        renderer.paint(g, loop.getSnapshot());
+        String stats = renderer.getStats();
+        if (!stats.equals(shownStats))
+        {
+            shownStats = stats;
+            window.setTitle(TITLE + " - " + stats);
+        }
+        Metrics.paintDone(start);
     }
 
     /**
-     * Draws the game board.
-     * @param g the graphics object.
+     * Requests a repaint of the regions changed since the last request.
+     * @param snapshot the snapshot about to be shown.
      */
-    private void drawBoard(Graphics g)
+    private void repaintChanged(Snapshot snapshot)
     {
-        for (int y=0; y<board.getHeight(); y++)
-        {
-            for (int x=0; x<board.getWidth(); x++)
-            {
-                Tile tile = board.getTile(y,x);              
-                int colorIndex = tile == null ? 0 : tile.getColor();
-                g.setColor(color[colorIndex]);
-                g.fillRect(20*x, 20*y, 20, 20);
-            }
-        }
+        renderer.invalidate(this, snapshot);
     }
 
     /**
-     * Draws the block.
-     * @param g the graphics object.
+     * Maps a key to the game action it triggers.
+     * @param keyCode the key code from the key event.
+     * @return the action for the key, or null if the key is not used.
      */
-    private void drawBlock(Graphics g)
+    private static Action toAction(int keyCode)
     {
-        for (int y=0; y<block.getSize(); y++)
-            for (int x=0; x<block.getSize(); x++)
-            {
-                Tile tile = block.getTile(y,x);
-                if (tile != null)
-                {
-                    g.setColor(color[tile.getColor()]);
-                    g.fillRect(20*(x+block.getX()), 20*(y+block.getY()), 20, 20);
-                }
-            }
+        switch (keyCode) {
+            case KeyEvent.VK_LEFT:
+                return Action.LEFT;
+            case KeyEvent.VK_RIGHT:
+                return Action.RIGHT;
+            case KeyEvent.VK_UP:
+                return Action.FLIP_VERTICAL;
+            case KeyEvent.VK_DOWN:
+                return Action.FLIP_HORIZONTAL;
+            case KeyEvent.VK_R:
+                return Action.ROTATE;
+            case KeyEvent.VK_OPEN_BRACKET:
+                return Action.SCALE_DOWN;
+            case KeyEvent.VK_CLOSE_BRACKET:
+                return Action.SCALE_UP;
+            case KeyEvent.VK_PAGE_DOWN:
+                return Action.DROP;
+            case KeyEvent.VK_SPACE:
+                return Action.HARD_DROP;
+            default:
+                return null;
+        }
     }
 
     /**
      * The main method.
      * @param args the command line arguments.
+     * @throws IOException if the replay log cannot be created.
      */
-    public static void main(String[] args)
+    public static void main(String[] args) throws IOException
     {
-        if (args.length != 2)
+        if (args.length < 2 || args.length > 5)
         {
-            System.err.println("Usage: java Game <height> <width>");
+            System.err.println("Usage: java Game <height> <width> [seed [ticksPerSecond [replayLog]]]");
             return;
         }
 
-        JFrame window = new JFrame("CS310 - Spring 2024 - Project 1");
+        Metrics.register();
+        window = new JFrame(TITLE);
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        board = new Board(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
-        block = new Block(0, 3, 3, (byte)(1 + rand.nextInt(color.length-1)));
-        window.setSize(board.getWidth()*20, board.getHeight()*20+29);
+        long seed = args.length >= 3 ? Long.parseLong(args[2]) : System.nanoTime();
+        int tickRate = args.length >= 4 ? Integer.parseInt(args[3]) : DEFAULT_TICK_RATE;
+        int height = Integer.parseInt(args[0]);
+        int width = Integer.parseInt(args[1]);
+        ReplayRecorder recorder = args.length == 5 ? new ReplayRecorder(Paths.get(args[4]), height, width, seed, KEYFRAME_EVERY) : null;
+        Engine engine = recorder != null ? recorder.getEngine() : new Engine(height, width, seed);
+        window.setSize(engine.getBoard().getWidth()*Renderer.CELL, engine.getBoard().getHeight()*Renderer.CELL+29);
         window.setVisible(true);
         final Game tetris = new Game();
+        loop = new GameLoop(engine, tickRate, tickRate, tetris::repaintChanged);
+        if (recorder != null)
+        {
+            loop.record(recorder);
+            Runtime.getRuntime().addShutdownHook(new Thread(loop::stop));
+        }
         window.add(tetris);
 
         window.addKeyListener(new KeyListener()
@@ -106,48 +151,9 @@ public final class Game extends JPanel
              */
             public void keyPressed(KeyEvent e)
             {
-                switch (e.getKeyCode()) {
-                    case KeyEvent.VK_LEFT:
-                        if (Tetris.canMoveLeft(board, block))
-                            block.moveLeft();
-                        break;
-                    case KeyEvent.VK_RIGHT:
-                        if (Tetris.canMoveRight(board, block))
-                            block.moveRight();
-                        break;
-                    case KeyEvent.VK_UP:
-                        if (Tetris.canflipVertical(board, block))
-                            block.flipVertical();
-                        break;
-                    case KeyEvent.VK_DOWN:
-                        if (Tetris.canflipHorizontal(board, block))
-                            block.flipHorizontal();
-                        break;
-                    case KeyEvent.VK_R:
-                        if (Tetris.canRotate(board, block))
-                            block.rotate();
-                        break;
-                    case KeyEvent.VK_OPEN_BRACKET:
-                        if (Tetris.canScaleDown(board, block))
-                        {
-                            block = block.scaleDown();
-                            board.penalize();
-                        }
-                        break;
-                    case KeyEvent.VK_CLOSE_BRACKET:
-                        if (Tetris.canScaleUp(board, block))
-                        {
-                            block = block.scaleUp();
-                            board.reward();
-                        }
-                        break;
-                    case KeyEvent.VK_PAGE_DOWN:
-                        if (Tetris.canDrop(board, block))
-                            block.drop();
-                        break;
-                }
-
-                tetris.repaint();
+                Action action = toAction(e.getKeyCode());
+                if (action != null)
+                    loop.submit(action);
             }
 
             /**
@@ -164,38 +170,6 @@ public final class Game extends JPanel
 
         });
 
-        new Thread()
-        {
-            /**
-             * Runs the game loop.
-             */
-            @Override
-            public void run()
-            {
-                while (true) {
-                    try
-                    {
-                        Thread.sleep(1000);
-
-                        if (Tetris.canDrop(board, block))
-                            block.drop();
-                        else
-                        {
-                            board.consolidate(block);
-                            board.clearRows();
-                            block = new Block(0, 3, 3, (byte)(1 + rand.nextInt(color.length-1)));
-                        }
-
-                        tetris.repaint();
-
-                        if (Tetris.isGameOver(board, block))
-                            break;
-                    }
-                    catch(InterruptedException e )
-                    {
-                    }
-                }
-            }
-        }.start();
+        loop.start();
     }
 }
@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a game on a single thread at a fixed tick rate.
+ * Only the loop thread touches the engine: other threads hand it actions through a lock-free queue,
+ * which is drained once per tick, and read the game through the immutable snapshot published after every tick that changed something.
+ * The loop wakes up at most once per millisecond and runs as many ticks as are due,
+ * so tick rates far above 1 kHz keep their pace without flooding the scheduler;
+ * when it falls more than MAX_LAG behind, the backlog is dropped rather than replayed.
+ * Every action the loop applies can be written to a replay log as well.
+ */
+public class GameLoop
+{
+    /**
+     * Shortest time between two wake-ups of the loop, in nanoseconds.
+     */
+    private static final long MIN_PERIOD = 1_000_000L;
+    /**
+     * Largest backlog of due ticks the loop catches up on, in nanoseconds; older ticks are skipped.
+     */
+    private static final long MAX_LAG = 250_000_000L;
+    /**
+     * The game; only the loop thread touches it once the loop has started.
+     */
+    private Engine engine;
+    /**
+     * Number of ticks per second.
+     */
+    private int tickRate;
+    /**
+     * Number of ticks between two clock drops of the block.
+     */
+    private int ticksPerDrop;
+    /**
+     * Actions waiting for the next tick, in the order they were submitted.
+     */
+    private Queue<Action> input = new ConcurrentLinkedQueue<>();
+    /**
+     * Receives every published snapshot on the loop thread, or null.
+     */
+    private Consumer<Snapshot> listener;
+    /**
+     * Records every applied action, or null.
+     */
+    private volatile ReplayRecorder recorder;
+    /**
+     * The latest published snapshot.
+     */
+    private volatile Snapshot snapshot;
+    /**
+     * Runs the loop, or null if it has not been started.
+     */
+    private ScheduledExecutorService executor;
+    /**
+     * The thread running the loop, or null if it has not been started.
+     */
+    private volatile Thread thread;
+    /**
+     * When the first tick was due, in nanoseconds.
+     */
+    private long start;
+    /**
+     * Number of ticks run, or skipped as backlog, since the loop started.
+     */
+    private long done;
+
+    /**
+     * Constructs a loop for a game; the loop does not run until start() is called.
+     * The game is counted in Metrics from now on, as the one game of the process that is played live.
+     * @param engine the game.
+     * @param tickRate the number of ticks per second.
+     * @param ticksPerDrop the number of ticks between two clock drops of the block.
+     * @param listener receives every published snapshot on the loop thread, or null.
+     * @throws IllegalArgumentException if the tick rate or drop interval is not positive.
+     */
+    public GameLoop(Engine engine, int tickRate, int ticksPerDrop, Consumer<Snapshot> listener) {
+        if (tickRate <= 0 || ticksPerDrop <= 0) {
+            throw new IllegalArgumentException("Invalid tick rate: " + tickRate + " ticks/s, drop every " + ticksPerDrop);
+        }
+        this.engine = engine;
+        engine.setMetered(true);
+        this.tickRate = tickRate;
+        this.ticksPerDrop = ticksPerDrop;
+        this.listener = listener;
+        this.snapshot = new Snapshot(engine);
+    }
+
+    /**
+     * Records every action the loop applies from now on; the recorder is closed when the loop stops.
+     * Must be called before the loop is started, with the recorder that owns the loop's game.
+     * @param recorder the recorder.
+     */
+    public synchronized void record(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Starts the loop on its own thread.
+     * @throws IllegalStateException if the loop has already been started.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            throw new IllegalStateException("Loop already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            thread = new Thread(r, "game-loop");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(MIN_PERIOD, 1_000_000_000L / tickRate);
+        start = System.nanoTime();
+        executor.scheduleAtFixedRate(this::wake, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the loop, waiting for a tick in progress to finish, and closes the replay log.
+     * Actions still queued are dropped.
+     */
+    public void stop() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = executor;
+        }
+        if (running != null) {
+            running.shutdown();
+            if (Thread.currentThread() != thread) {
+                try {
+                    running.awaitTermination(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        closeRecorder();
+    }
+
+    /**
+     * Queues an action for the next tick. May be called from any thread and never blocks.
+     * @param action the action to apply.
+     */
+    public void submit(Action action) { // O(1)
+        input.offer(action);
+    }
+
+    /**
+     * Gets the latest published snapshot of the game.
+     * @return the snapshot.
+     */
+    public Snapshot getSnapshot() { // O(1)
+        return snapshot;
+    }
+
+    /**
+     * Runs every tick that is due, then publishes a snapshot if anything changed.
+     */
+    private void wake() { // O(due_ticks * board_size / 64 + height)
+        long due = (System.nanoTime() - start) * tickRate / 1_000_000_000L;
+        long backlog = (long) tickRate * MAX_LAG / 1_000_000_000L;
+        if (due - done > backlog) {
+            done = due - backlog;
+        }
+        boolean changed = false;
+        while (done < due && !engine.isGameOver()) {
+            changed |= tick();
+        }
+        if (changed) {
+            snapshot = new Snapshot(engine);
+            if (listener != null) {
+                listener.accept(snapshot);
+            }
+        }
+        if (engine.isGameOver()) {
+            stop();
+        }
+    }
+
+    /**
+     * Runs one tick: applies every queued action, then drops the block if a clock drop is due.
+     * @return true if the board or block changed, false otherwise.
+     */
+    private boolean tick() { // O(queued_actions * block_size + board_size / 64)
+        long start = Metrics.start();
+        boolean changed = false;
+        for (Action action = input.poll(); action != null; action = input.poll()) {
+            changed |= apply(action);
+        }
+        done++;
+        if (done % ticksPerDrop == 0) {
+            changed |= apply(Action.TICK);
+        }
+        Metrics.tickDone(start);
+        return changed;
+    }
+
+    /**
+     * Applies one action to the game and records it.
+     * If the replay log cannot be written, recording stops but the game goes on.
+     * @param action the action to apply.
+     * @return true if the board or block changed, false otherwise.
+     */
+    private boolean apply(Action action) {
+        boolean changed = engine.step(action);
+        ReplayRecorder log = recorder;
+        if (log != null) {
+            try {
+                log.record(action);
+            } catch (IOException e) {
+                System.err.println("Replay recording stopped: " + e);
+                closeRecorder();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Closes the replay log, if one is being written.
+     */
+    private synchronized void closeRecorder() {
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                System.err.println("Replay log not closed: " + e);
+            }
+            recorder = null;
+        }
+    }
+}
@@ -0,0 +1,685 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many independent games over TCP, one game per connection.
+ * A single selector thread accepts connections, parses what clients send and writes what they are sent;
+ * it never touches a game. Every connection belongs to one of a few workers, and each worker runs all of its games
+ * in one batch per tick at a fixed rate, applying the actions queued since the last tick the way GameLoop does,
+ * so a game is only ever touched by its worker thread.
+ * <p>
+ * The protocol is binary and big-endian. A client sends single-byte records:
+ * <ul>
+ * <li>an action: the Action ordinal, for the keys that Game's KeyListener handles plus TICK and HARD_DROP;</li>
+ * <li>a game start: OPEN, then height (2 bytes), width (2 bytes) and seed (8 bytes); it replaces any running game.
+ * A board below 3 rows or 6 columns, where the first block would not fit, closes the connection.</li>
+ * </ul>
+ * After every tick in which a game changed or received actions, the server sends a state record:
+ * STATE, the number of actions applied so far (4 bytes), whether the game is over (1 byte),
+ * block y and x (2 bytes each, signed), block size (2 bytes) and one color byte per block cell,
+ * then the number of board rows that follow (4 bytes) and, per row that changed since the last state,
+ * its index (4 bytes) and one color byte per column. Color 0 is an empty cell, and the first state of a game carries every row.
+ * Actions sent before the first OPEN are counted but ignored, and no state is sent until a game has started.
+ * A client that sends records faster than its worker applies them is read from only as fast as they are applied.
+ */
+public class GameServer implements Closeable
+{
+    /**
+     * Record code of a game start.
+     */
+    static final int OPEN = 0x40;
+    /**
+     * Record code of a state update.
+     */
+    static final int STATE = 0x20;
+    /**
+     * Length of a game start record, code included.
+     */
+    static final int OPEN_LENGTH = 13;
+    /**
+     * Length of the fixed part of a state record, before the block cells.
+     */
+    static final int STATE_HEADER = 12;
+    /**
+     * Largest board a client may ask for, in cells.
+     */
+    private static final int MAX_CELLS = 1 << 22;
+    /**
+     * Fewest rows a client may ask for; Engine spawns every block 3 rows tall at the top of the board.
+     */
+    private static final int MIN_HEIGHT = 3;
+    /**
+     * Fewest columns a client may ask for; Engine spawns every block 3 columns wide at column 3.
+     */
+    private static final int MIN_WIDTH = 6;
+    /**
+     * Most bytes waiting to be sent to one client before it is dropped as too slow.
+     */
+    private static final long MAX_PENDING = 1 << 22;
+    /**
+     * Most actions and game starts waiting for one client's worker; above it the server stops reading from the client
+     * until the worker has applied them.
+     */
+    private static final int MAX_QUEUED = 4096;
+    /**
+     * Every action, indexed by ordinal.
+     */
+    private static final Action[] ACTIONS = Action.values();
+    /**
+     * The listening socket.
+     */
+    private ServerSocketChannel server;
+    /**
+     * Selector of the front end thread.
+     */
+    private Selector selector;
+    /**
+     * The workers, which run the games.
+     */
+    private Worker[] workers;
+    /**
+     * Number of ticks per second of every worker.
+     */
+    private int tickRate;
+    /**
+     * Number of ticks between two clock drops of a block.
+     */
+    private int ticksPerDrop;
+    /**
+     * Sessions with records waiting to be written, handed from the workers to the selector thread.
+     */
+    private Queue<Session> flushes = new ConcurrentLinkedQueue<>();
+    /**
+     * Whether a wake-up of the selector is already on its way.
+     */
+    private AtomicBoolean woken = new AtomicBoolean();
+    /**
+     * Runs the workers, or null if the server has not been started.
+     */
+    private ScheduledExecutorService ticker;
+    /**
+     * The selector thread, or null if the server has not been started.
+     */
+    private Thread front;
+    /**
+     * Whether the server is running.
+     */
+    private volatile boolean running;
+    /**
+     * Index of the worker that gets the next connection.
+     */
+    private int nextWorker;
+
+    /**
+     * Binds a server; it does not accept connections until start() is called.
+     * @param address the address to listen on; port 0 picks a free port.
+     * @param workers the number of worker threads.
+     * @param tickRate the number of ticks per second.
+     * @param ticksPerDrop the number of ticks between two clock drops of a block.
+     * @throws IOException if the address cannot be bound.
+     * @throws IllegalArgumentException if a count or rate is not positive.
+     */
+    public GameServer(InetSocketAddress address, int workers, int tickRate, int ticksPerDrop) throws IOException {
+        if (workers <= 0 || tickRate <= 0 || ticksPerDrop <= 0) {
+            throw new IllegalArgumentException("Invalid server: " + workers + " workers, " + tickRate + " ticks/s, drop every " + ticksPerDrop);
+        }
+        this.tickRate = tickRate;
+        this.ticksPerDrop = ticksPerDrop;
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker();
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return the port.
+     */
+    public int getPort() { // O(1)
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Starts the selector thread and the workers.
+     * @throws IllegalStateException if the server has already been started.
+     */
+    public synchronized void start() {
+        if (front != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        running = true;
+        ticker = Executors.newScheduledThreadPool(workers.length, r -> {
+            Thread thread = new Thread(r, "game-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, 1_000_000_000L / tickRate);
+        for (Worker worker : workers) {
+            ticker.scheduleAtFixedRate(worker::tick, period, period, TimeUnit.NANOSECONDS);
+        }
+        front = new Thread(this::serve, "game-server");
+        front.setDaemon(true);
+        front.start();
+    }
+
+    /**
+     * Stops the server and closes every connection.
+     * @throws IOException if the listening socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        selector.wakeup();
+        if (front != null && Thread.currentThread() != front) {
+            try {
+                front.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Runs the front end: accepts, reads and writes until the server is closed.
+     */
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+                woken.set(false);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Session session = (Session) key.attachment();
+                    if (key.isReadable()) {
+                        read(session);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(session);
+                    }
+                }
+                selector.selectedKeys().clear();
+                for (Session session = flushes.poll(); session != null; session = flushes.poll()) {
+                    flush(session);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Game server stopped: " + e);
+            }
+        }
+    }
+
+    /**
+     * Accepts every pending connection and hands each to a worker.
+     * A connection that cannot be set up, for example because the client has already reset it, is closed and skipped.
+     * @throws IOException if the listening socket fails.
+     */
+    private void accept() throws IOException {
+        for (SocketChannel channel = server.accept(); channel != null; channel = server.accept()) {
+            Session session = new Session(channel);
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // nothing left to release
+                }
+                continue;
+            }
+            workers[nextWorker].added.add(session);
+            nextWorker = (nextWorker + 1) % workers.length;
+        }
+    }
+
+    /**
+     * Reads what a client sent and queues every complete record for its worker.
+     * The connection is closed on end of stream and on a read error.
+     * @param session the client.
+     */
+    private void read(Session session) { // O(bytes_read)
+        try {
+            if (session.channel.read(session.in) < 0) {
+                drop(session);
+                return;
+            }
+        } catch (IOException e) {
+            drop(session);
+            return;
+        }
+        parse(session);
+    }
+
+    /**
+     * Queues every complete record read from a client for its worker.
+     * When the worker has MAX_QUEUED records waiting, parsing stops and the client is no longer read from;
+     * the worker has reading resumed once it has applied them.
+     * The connection is closed on a malformed record and on a board too small or too large to play.
+     * @param session the client.
+     */
+    private void parse(Session session) { // O(bytes_parsed)
+        ByteBuffer in = session.in;
+        in.flip();
+        while (in.hasRemaining()) {
+            if (session.queued.get() >= MAX_QUEUED) {
+                session.paused = true;
+                // the worker looks at paused after it drains, so a drain between the two reads is not missed
+                if (session.queued.get() >= MAX_QUEUED) {
+                    break;
+                }
+                session.paused = false;
+            }
+            int code = in.get(in.position()) & 0xFF;
+            if (code < ACTIONS.length) {
+                in.get();
+                session.inbox.add(ACTIONS[code]);
+                session.queued.incrementAndGet();
+            } else if (code == OPEN) {
+                if (in.remaining() < OPEN_LENGTH) {
+                    break;
+                }
+                in.get();
+                int height = in.getShort() & 0xFFFF;
+                int width = in.getShort() & 0xFFFF;
+                long seed = in.getLong();
+                if (height < MIN_HEIGHT || width < MIN_WIDTH || (long) height * width > MAX_CELLS) {
+                    drop(session);
+                    return;
+                }
+                session.inbox.add(new Open(height, width, seed));
+                session.queued.incrementAndGet();
+            } else {
+                drop(session);
+                return;
+            }
+        }
+        in.compact();
+        if (session.paused) {
+            session.key.interestOps(session.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Writes as much of a client's waiting records as the socket takes, and watches for writability if some are left.
+     * A client whose reading was stopped is parsed and read from again once its worker has drained its queue.
+     * @param session the client.
+     */
+    private void flush(Session session) { // O(bytes_written), plus O(bytes_parsed) when reading resumes
+        if (session.closed) {
+            drop(session);
+            return;
+        }
+        if (session.paused && session.queued.get() < MAX_QUEUED) {
+            session.paused = false;
+            parse(session);
+            if (session.closed) {
+                return;
+            }
+        }
+        int reading = session.paused ? 0 : SelectionKey.OP_READ;
+        try {
+            for (ByteBuffer out = session.out.peek(); out != null; out = session.out.peek()) {
+                session.channel.write(out);
+                if (out.hasRemaining()) {
+                    session.key.interestOps(reading | SelectionKey.OP_WRITE);
+                    return;
+                }
+                session.out.poll();
+                session.pending.addAndGet(-out.limit());
+            }
+            session.key.interestOps(reading);
+        } catch (IOException e) {
+            drop(session);
+        }
+    }
+
+    /**
+     * Closes a client connection on the selector thread; its worker forgets the game at its next tick.
+     * @param session the client.
+     */
+    private void drop(Session session) {
+        session.closed = true;
+        session.key.cancel();
+        try {
+            session.channel.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    /**
+     * Queues a record for a client and wakes the selector thread to write it.
+     * A client that lets too much pile up is closed.
+     * @param session the client.
+     * @param record the record, ready to be read.
+     */
+    private void send(Session session, ByteBuffer record) { // O(1)
+        if (session.pending.addAndGet(record.remaining()) > MAX_PENDING) {
+            abandon(session);
+            return;
+        }
+        session.out.add(record);
+        flushes.add(session);
+        if (woken.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Has the selector thread read from a client again, once its worker has drained the queue that stopped the reading.
+     * @param session the client.
+     */
+    private void resume(Session session) { // O(1)
+        flushes.add(session);
+        if (woken.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Marks a client as closed from a worker and has the selector thread close its connection.
+     * @param session the client.
+     */
+    private void abandon(Session session) { // O(1)
+        session.closed = true;
+        flushes.add(session);
+        if (woken.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Encodes the state of a game: the block, and the board rows changed since the last state sent.
+     * @param session the client, whose game belongs to the calling worker.
+     * @return the record, ready to be read.
+     */
+    private static ByteBuffer encode(Session session) { // O(height + changed_rows * width + block_size)
+        Engine engine = session.engine;
+        Board board = engine.getBoard();
+        Block block = engine.getBlock();
+        int size = block.getSize();
+        int rows = 0;
+        if (board.getVersion() != session.sentVersion) {
+            for (int y = 0; y < board.getHeight(); y++) {
+                if (board.getRowVersion(y) > session.sentVersion) {
+                    rows++;
+                }
+            }
+        }
+        ByteBuffer record = ByteBuffer.allocate(STATE_HEADER + size * size + 4 + rows * (4 + board.getWidth()));
+        record.put((byte) STATE);
+        record.putInt((int) session.applied);
+        record.put((byte) (engine.isGameOver() ? 1 : 0));
+        record.putShort((short) block.getY());
+        record.putShort((short) block.getX());
+        record.putShort((short) size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                record.put(color(block.getTile(i, j)));
+            }
+        }
+        record.putInt(rows);
+        for (int y = 0; rows > 0 && y < board.getHeight(); y++) {
+            if (board.getRowVersion(y) > session.sentVersion) {
+                record.putInt(y);
+                for (int x = 0; x < board.getWidth(); x++) {
+                    record.put(color(board.getTile(y, x)));
+                }
+            }
+        }
+        session.sentVersion = board.getVersion();
+        return record.flip();
+    }
+
+    /**
+     * Gets the wire color of a tile.
+     * @param tile the tile, or null.
+     * @return its color, or 0 for an empty cell.
+     */
+    private static byte color(Tile tile) { // O(1)
+        return tile == null ? 0 : tile.getColor();
+    }
+
+    /**
+     * A request to start a new game on a connection.
+     */
+    private static final class Open
+    {
+        /**
+         * The height of the board.
+         */
+        private final int height;
+        /**
+         * The width of the board.
+         */
+        private final int width;
+        /**
+         * The seed of the game.
+         */
+        private final long seed;
+
+        /**
+         * Constructs a request.
+         * @param height the height of the board.
+         * @param width the width of the board.
+         * @param seed the seed of the game.
+         */
+        Open(int height, int width, long seed) {
+            this.height = height;
+            this.width = width;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * One client connection and its game.
+     * The channel, key and input buffer belong to the selector thread; the game belongs to the worker.
+     */
+    private static final class Session
+    {
+        /**
+         * The connection.
+         */
+        private final SocketChannel channel;
+        /**
+         * The registration of the connection with the selector.
+         */
+        private SelectionKey key;
+        /**
+         * Bytes read but not parsed yet.
+         */
+        private final ByteBuffer in = ByteBuffer.allocate(1024);
+        /**
+         * Records waiting to be written, oldest first.
+         */
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        /**
+         * Number of bytes in out.
+         */
+        private final AtomicLong pending = new AtomicLong();
+        /**
+         * Actions and game starts waiting for the next tick, in the order they arrived.
+         */
+        private final Queue<Object> inbox = new ConcurrentLinkedQueue<>();
+        /**
+         * Number of records in inbox.
+         */
+        private final AtomicInteger queued = new AtomicInteger();
+        /**
+         * Whether the selector thread has stopped reading from the client because inbox is full.
+         */
+        private volatile boolean paused;
+        /**
+         * Whether the connection has been closed.
+         */
+        private volatile boolean closed;
+        /**
+         * The game, or null until the client starts one.
+         */
+        private Engine engine;
+        /**
+         * Number of actions received so far, applied or ignored.
+         */
+        private long applied;
+        /**
+         * Board version of the last state sent, or -1 if none has been sent for this game.
+         */
+        private long sentVersion = -1;
+
+        /**
+         * Constructs a session for a new connection.
+         * @param channel the connection.
+         */
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Runs a share of the games, all of them once per tick on one thread.
+     */
+    private final class Worker
+    {
+        /**
+         * Sessions handed over by the selector thread and not yet picked up.
+         */
+        private final Queue<Session> added = new ConcurrentLinkedQueue<>();
+        /**
+         * Sessions owned by this worker.
+         */
+        private final List<Session> sessions = new ArrayList<>();
+        /**
+         * Number of ticks run so far.
+         */
+        private long ticks;
+
+        /**
+         * Runs one tick of every game: applies queued actions, drops blocks when a clock drop is due,
+         * and sends the state of every game that changed or received actions.
+         */
+        void tick() { // O(sessions + actions * block_size + changed_rows * width)
+            for (Session session = added.poll(); session != null; session = added.poll()) {
+                sessions.add(session);
+            }
+            ticks++;
+            boolean drop = ticks % ticksPerDrop == 0;
+            for (int i = sessions.size() - 1; i >= 0; i--) {
+                Session session = sessions.get(i);
+                if (session.closed) {
+                    sessions.set(i, sessions.get(sessions.size() - 1));
+                    sessions.remove(sessions.size() - 1);
+                    continue;
+                }
+                try {
+                    if (step(session, drop)) {
+                        send(session, encode(session));
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Game session failed: " + e);
+                    abandon(session);
+                }
+            }
+        }
+
+        /**
+         * Applies the queued actions and game starts of one session, has reading from it resumed if a full queue stopped it,
+         * then the clock drop if one is due.
+         * @param session the session.
+         * @param drop whether a clock drop is due.
+         * @return true if the session has a game and it changed or received anything, false otherwise.
+         */
+        private boolean step(Session session, boolean drop) { // O(actions * block_size + board_size / 64)
+            boolean changed = false;
+            for (Object request = session.inbox.poll(); request != null; request = session.inbox.poll()) {
+                session.queued.decrementAndGet();
+                changed = true;
+                if (request instanceof Open) {
+                    Open open = (Open) request;
+                    session.engine = new Engine(open.height, open.width, open.seed);
+                    session.sentVersion = -1;
+                } else {
+                    session.applied++;
+                    if (session.engine != null) {
+                        session.engine.step((Action) request);
+                    }
+                }
+            }
+            if (changed && session.paused) {
+                resume(session);
+            }
+            if (drop && session.engine != null && !session.engine.isGameOver()) {
+                changed |= session.engine.step(Action.TICK);
+            }
+            return changed && session.engine != null;
+        }
+    }
+
+    /**
+     * Runs a server until the process is stopped.
+     * @param args the port, and optionally the number of workers, the tick rate and the ticks per drop.
+     * @throws IOException if the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1 && args.length != 4)
+        {
+            System.err.println("Usage: java GameServer <port> [<workers> <ticksPerSecond> <ticksPerDrop>]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int workers = args.length == 4 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int tickRate = args.length == 4 ? Integer.parseInt(args[2]) : 1000;
+        int ticksPerDrop = args.length == 4 ? Integer.parseInt(args[3]) : 500;
+        GameServer server = new GameServer(new InetSocketAddress(port), workers, tickRate, ticksPerDrop);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Server not closed: " + e);
+            }
+        }));
+        try {
+            server.front.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Aggregate statistics over a batch of headless games.
+ * Each worker fills its own instance and the instances are merged, so counting never contends.
+ */
+public class GameStats
+{
+    /**
+     * Number of games played.
+     */
+    private long games;
+    /**
+     * Number of games that ended before reaching the step limit.
+     */
+    private long finished;
+    /**
+     * Total number of actions applied.
+     */
+    private long steps;
+    /**
+     * Total number of clock ticks applied.
+     */
+    private long ticks;
+    /**
+     * Total number of blocks spawned.
+     */
+    private long pieces;
+    /**
+     * Total number of rows cleared.
+     */
+    private long rowsCleared;
+    /**
+     * Most rows cleared in a single game.
+     */
+    private long maxRowsCleared;
+
+    /**
+     * Records one played game.
+     * @param engine the game after its last step.
+     * @param steps the number of actions that were applied to it.
+     */
+    public void add(Engine engine, long steps) { // O(1)
+        this.games++;
+        if (engine.isGameOver()) {
+            this.finished++;
+        }
+        this.steps += steps;
+        this.ticks += engine.getTicks();
+        this.pieces += engine.getPieces();
+        this.rowsCleared += engine.getRowsCleared();
+        this.maxRowsCleared = Math.max(this.maxRowsCleared, engine.getRowsCleared());
+    }
+
+    /**
+     * Adds another set of statistics to this one.
+     * @param other the statistics to merge in.
+     */
+    public void merge(GameStats other) { // O(1)
+        this.games += other.games;
+        this.finished += other.finished;
+        this.steps += other.steps;
+        this.ticks += other.ticks;
+        this.pieces += other.pieces;
+        this.rowsCleared += other.rowsCleared;
+        this.maxRowsCleared = Math.max(this.maxRowsCleared, other.maxRowsCleared);
+    }
+
+    /**
+     * Makes an independent copy of these statistics.
+     * @return the copy.
+     */
+    public GameStats copy() { // O(1)
+        GameStats copy = new GameStats();
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Gets the number of games played.
+     * @return the game count.
+     */
+    public long getGames() { // O(1)
+        return games;
+    }
+
+    /**
+     * Gets the number of games that ended before reaching the step limit.
+     * @return the finished game count.
+     */
+    public long getFinished() { // O(1)
+        return finished;
+    }
+
+    /**
+     * Gets the total number of actions applied.
+     * @return the step count.
+     */
+    public long getSteps() { // O(1)
+        return steps;
+    }
+
+    /**
+     * Gets the total number of clock ticks applied.
+     * @return the tick count.
+     */
+    public long getTicks() { // O(1)
+        return ticks;
+    }
+
+    /**
+     * Gets the total number of blocks spawned.
+     * @return the piece count.
+     */
+    public long getPieces() { // O(1)
+        return pieces;
+    }
+
+    /**
+     * Gets the total number of rows cleared.
+     * @return the cleared row count.
+     */
+    public long getRowsCleared() { // O(1)
+        return rowsCleared;
+    }
+
+    /**
+     * Gets the most rows cleared in a single game.
+     * @return the largest per-game cleared row count.
+     */
+    public long getMaxRowsCleared() { // O(1)
+        return maxRowsCleared;
+    }
+
+    /**
+     * Describes the statistics in one line.
+     * @return the summary.
+     */
+    @Override
+    public String toString() {
+        return "games=" + games + " finished=" + finished + " steps=" + steps + " ticks=" + ticks
+            + " pieces=" + pieces + " rowsCleared=" + rowsCleared + " maxRowsCleared=" + maxRowsCleared;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.Arrays;
+
+/**
+ * A color plane held on the heap as one byte array per row.
+ * Rows move by reference, and share() copies only the row references.
+ */
+public class HeapColorPlane implements ColorPlane
+{
+    /**
+     * The colors of every row.
+     */
+    private byte[][] rows;
+
+    /**
+     * Constructs a plane whose cells are all color 0.
+     * @param height the number of rows.
+     * @param width the number of columns.
+     */
+    public HeapColorPlane(int height, int width) { // O(height * width)
+        this(new byte[height][width]);
+    }
+
+    /**
+     * Constructs a plane over existing rows, which the plane takes over.
+     * @param rows the colors of every row.
+     */
+    HeapColorPlane(byte[][] rows) { // O(1)
+        this.rows = rows;
+    }
+
+    /**
+     * Gets the color of a cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return the color of the cell.
+     */
+    @Override
+    public byte get(int row, int col) { // O(1)
+        return rows[row][col];
+    }
+
+    /**
+     * Sets the color of a cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @param color the new color.
+     */
+    @Override
+    public void set(int row, int col, byte color) { // O(1)
+        rows[row][col] = color;
+    }
+
+    /**
+     * Copies the colors of a row into an array.
+     * @param row the row.
+     * @param dst receives the colors.
+     */
+    @Override
+    public void read(int row, byte[] dst) { // O(width)
+        System.arraycopy(rows[row], 0, dst, 0, rows[row].length);
+    }
+
+    /**
+     * Exchanges two rows by reference.
+     * @param a the first row.
+     * @param b the second row.
+     */
+    @Override
+    public void swap(int a, int b) { // O(1)
+        byte[] temp = rows[a];
+        rows[a] = rows[b];
+        rows[b] = temp;
+    }
+
+    /**
+     * Sets every cell of a row to color 0.
+     * @param row the row.
+     */
+    @Override
+    public void clear(int row) { // O(width)
+        Arrays.fill(rows[row], (byte) 0);
+    }
+
+    /**
+     * Copies the colors of one row over another.
+     * @param from the row to copy.
+     * @param to the row to overwrite.
+     */
+    @Override
+    public void copy(int from, int to) { // O(width)
+        System.arraycopy(rows[from], 0, rows[to], 0, rows[to].length);
+    }
+
+    /**
+     * Replaces a row that may be shared with a private array.
+     * @param row the row.
+     * @param keep whether to copy the contents; if not, the new row is all color 0.
+     */
+    @Override
+    public void detach(int row, boolean keep) { // O(width)
+        rows[row] = keep ? rows[row].clone() : new byte[rows[row].length];
+    }
+
+    /**
+     * Creates a plane that shares every row with this one.
+     * @return the new plane.
+     */
+    @Override
+    public ColorPlane share() { // O(height)
+        return new HeapColorPlane(rows.clone());
+    }
+
+    /**
+     * Does nothing; a heap plane has no durable storage.
+     */
+    @Override
+    public void force() { // O(1)
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An undo/redo log of the changes made to a game, for tools that step backward and forward through it.
+ * Boards, blocks and engines that have a journal record a small reversible delta for every change they make,
+ * so undoing or redoing a change costs as much as the change itself, not a copy of the board.
+ * Deltas are grouped into steps: everything recorded between two calls to mark() is undone and redone together.
+ * An Engine marks a step after every action; code that drives a board or block directly marks its own steps.
+ * The log keeps at most a given number of bytes of deltas, forgetting the oldest steps first.
+ */
+public class Journal
+{
+    /**
+     * A change that can be reverted and applied again.
+     * A delta is only ever undone on the state it produced and redone on the state it came from.
+     */
+    interface Delta
+    {
+        /**
+         * Reverts the change.
+         */
+        void undo();
+
+        /**
+         * Applies the change again.
+         */
+        void redo();
+
+        /**
+         * Estimates the memory the delta holds on to.
+         * @return the estimate, in bytes.
+         */
+        long bytes();
+    }
+
+    /**
+     * The most bytes of deltas kept.
+     */
+    private long capacity;
+    /**
+     * Bytes of deltas kept, including the open step.
+     */
+    private long bytes;
+    /**
+     * Steps that can be undone, the latest last.
+     */
+    private ArrayDeque<Step> done = new ArrayDeque<>();
+    /**
+     * Steps that can be redone, the latest undone last.
+     */
+    private ArrayDeque<Step> undone = new ArrayDeque<>();
+    /**
+     * The step being recorded, or null if nothing was recorded since the last mark.
+     */
+    private Step open;
+
+    /**
+     * Constructs an empty journal.
+     * @param capacity the most bytes of deltas to keep; older steps are forgotten to stay under it.
+     * @throws IllegalArgumentException if the capacity is negative.
+     */
+    public Journal(long capacity) { // O(1)
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a change to the open step. Whatever could be redone is forgotten, since it no longer follows.
+     * @param delta the change, which has just been made.
+     */
+    void record(Delta delta) { // O(1), plus O(steps) to forget the redo steps
+        if (!undone.isEmpty()) {
+            for (Step step : undone) {
+                bytes -= step.bytes;
+            }
+            undone.clear();
+        }
+        if (open == null) {
+            open = new Step();
+        }
+        long size = delta.bytes();
+        open.deltas.add(delta);
+        open.bytes += size;
+        bytes += size;
+    }
+
+    /**
+     * Ends the open step, so that the changes recorded since the last mark are undone as one.
+     * Does nothing if nothing was recorded.
+     */
+    public void mark() { // O(1), plus O(forgotten_steps)
+        if (open != null) {
+            done.addLast(open);
+            open = null;
+            trim();
+        }
+    }
+
+    /**
+     * Reverts the latest step, ending the open step first.
+     * @return true if a step was undone, false if there is none left.
+     */
+    public boolean undo() { // O(size of the step's deltas)
+        mark();
+        Step step = done.pollLast();
+        if (step == null) {
+            return false;
+        }
+        for (int i = step.deltas.size() - 1; i >= 0; i--) {
+            step.deltas.get(i).undo();
+        }
+        undone.addLast(step);
+        return true;
+    }
+
+    /**
+     * Applies the latest undone step again.
+     * @return true if a step was redone, false if there is none.
+     */
+    public boolean redo() { // O(size of the step's deltas)
+        mark();
+        Step step = undone.pollLast();
+        if (step == null) {
+            return false;
+        }
+        for (Delta delta : step.deltas) {
+            delta.redo();
+        }
+        done.addLast(step);
+        return true;
+    }
+
+    /**
+     * Checks if there is a step to undo.
+     * @return true if undo() would change something, false otherwise.
+     */
+    public boolean canUndo() { // O(1)
+        return open != null || !done.isEmpty();
+    }
+
+    /**
+     * Checks if there is a step to redo.
+     * @return true if redo() would change something, false otherwise.
+     */
+    public boolean canRedo() { // O(1)
+        return !undone.isEmpty();
+    }
+
+    /**
+     * Gets the estimated memory held by the recorded deltas.
+     * @return the estimate, in bytes.
+     */
+    public long getBytes() { // O(1)
+        return bytes;
+    }
+
+    /**
+     * Gets the most bytes of deltas the journal keeps.
+     * @return the capacity, in bytes.
+     */
+    public long getCapacity() { // O(1)
+        return capacity;
+    }
+
+    /**
+     * Forgets every step, so nothing can be undone or redone.
+     */
+    public void clear() { // O(1)
+        done.clear();
+        undone.clear();
+        open = null;
+        bytes = 0;
+    }
+
+    /**
+     * Forgets the oldest steps until the journal is within its capacity.
+     * Only called after recording, which has already forgotten the undone steps.
+     */
+    private void trim() { // O(forgotten_steps)
+        while (bytes > capacity && !done.isEmpty()) {
+            bytes -= done.pollFirst().bytes;
+        }
+    }
+
+    /**
+     * The deltas recorded between two marks.
+     */
+    private static final class Step
+    {
+        /**
+         * The deltas, in the order they were recorded.
+         */
+        private final List<Delta> deltas = new ArrayList<>(4);
+        /**
+         * Estimated memory held by the deltas, in bytes.
+         */
+        private long bytes;
+    }
+}
@@ -0,0 +1,236 @@
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds.
+ * Every power of two is split into SUB_BUCKETS buckets, so a percentile is reported within 1/SUB_BUCKETS of its value
+ * and the whole range of a long fits in a few hundred counters; recording is a handful of atomic adds.
+ */
+public class LatencyHistogram
+{
+    /**
+     * Number of bits below the leading one that pick the bucket within a power of two.
+     */
+    private static final int SUB_BITS = 3;
+    /**
+     * Number of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * Number of values recorded in every bucket.
+     */
+    private AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+    /**
+     * Number of values recorded.
+     */
+    private AtomicLong count = new AtomicLong();
+    /**
+     * Sum of the values recorded, in nanoseconds.
+     */
+    private AtomicLong total = new AtomicLong();
+    /**
+     * Largest value recorded, in nanoseconds.
+     */
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration. May be called from any thread.
+     * @param nanos the duration in nanoseconds; negative values count as 0.
+     */
+    public void record(long nanos) { // O(1)
+        nanos = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        if (nanos > max.get()) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * Forgets every recorded value.
+     * Values recorded while the histogram is being reset may be partly kept.
+     */
+    public void reset() { // O(buckets)
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Summarizes the recorded values.
+     * A percentile is the upper bound of its bucket, but never more than the largest value recorded.
+     * Values recorded while the summary is being taken may be partly counted.
+     * @return the summary.
+     */
+    public Summary summarize() { // O(buckets)
+        long top = max.get();
+        long[] counts = new long[buckets.length()];
+        long n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        long mean = n == 0 ? 0 : total.get() / n;
+        return new Summary(n, mean, Math.min(percentile(counts, n, 0.5), top), Math.min(percentile(counts, n, 0.99), top),
+            Math.min(percentile(counts, n, 0.999), top), top);
+    }
+
+    /**
+     * Finds the bucket of a value.
+     * Values below SUB_BUCKETS get a bucket each; larger values share a bucket with the values that agree in their top SUB_BITS + 1 bits.
+     * @param nanos the value, which must not be negative.
+     * @return the index of the bucket.
+     */
+    private static int bucket(long nanos) { // O(1)
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        return ((exponent + 1) << SUB_BITS) + (int) ((nanos >>> exponent) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Gets the largest value that falls in a bucket.
+     * @param bucket the index of the bucket.
+     * @return the upper bound of the bucket, in nanoseconds.
+     */
+    private static long upperBound(int bucket) { // O(1)
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BITS) - 1;
+        long lower = ((long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1)))) << exponent;
+        return lower + (1L << exponent) - 1;
+    }
+
+    /**
+     * Finds the value below which a share of the recorded values fall.
+     * @param counts the number of values in every bucket.
+     * @param n the total number of values.
+     * @param share the share, between 0 and 1.
+     * @return the upper bound of the bucket holding the percentile, or 0 if nothing was recorded.
+     */
+    private static long percentile(long[] counts, long n, double share) { // O(buckets)
+        long rank = (long) Math.ceil(n * share);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * An immutable summary of a histogram, as published over JMX.
+     */
+    public static class Summary
+    {
+        /**
+         * Number of values recorded.
+         */
+        private final long count;
+        /**
+         * Mean of the values, in nanoseconds.
+         */
+        private final long mean;
+        /**
+         * Median of the values, in nanoseconds.
+         */
+        private final long p50;
+        /**
+         * 99th percentile of the values, in nanoseconds.
+         */
+        private final long p99;
+        /**
+         * 99.9th percentile of the values, in nanoseconds.
+         */
+        private final long p999;
+        /**
+         * Largest value, in nanoseconds.
+         */
+        private final long max;
+
+        /**
+         * Constructs a summary.
+         * @param count the number of values recorded.
+         * @param meanNanos the mean of the values.
+         * @param p50Nanos the median of the values.
+         * @param p99Nanos the 99th percentile of the values.
+         * @param p999Nanos the 99.9th percentile of the values.
+         * @param maxNanos the largest value.
+         */
+        @ConstructorProperties({"count", "meanNanos", "p50Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+        public Summary(long count, long meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+            this.count = count;
+            this.mean = meanNanos;
+            this.p50 = p50Nanos;
+            this.p99 = p99Nanos;
+            this.p999 = p999Nanos;
+            this.max = maxNanos;
+        }
+
+        /**
+         * Gets the number of values recorded.
+         * @return the count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the mean of the values.
+         * @return the mean, in nanoseconds.
+         */
+        public long getMeanNanos() {
+            return mean;
+        }
+
+        /**
+         * Gets the median of the values.
+         * @return the median, in nanoseconds.
+         */
+        public long getP50Nanos() {
+            return p50;
+        }
+
+        /**
+         * Gets the 99th percentile of the values.
+         * @return the percentile, in nanoseconds.
+         */
+        public long getP99Nanos() {
+            return p99;
+        }
+
+        /**
+         * Gets the 99.9th percentile of the values.
+         * @return the percentile, in nanoseconds.
+         */
+        public long getP999Nanos() {
+            return p999;
+        }
+
+        /**
+         * Gets the largest value.
+         * @return the maximum, in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+        /**
+         * Describes the summary in one line.
+         * @return the summary.
+         */
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + mean + "ns p50=" + p50 + "ns p99=" + p99 + "ns p99.9=" + p999 + "ns max=" + max + "ns";
+        }
+    }
+}
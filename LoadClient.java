@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+
+/**
+ * Drives many games on a GameServer at once and measures throughput and latency.
+ * Every connection starts a game and sends random actions at a fixed rate from one selector thread;
+ * an action counts as served when a state record acknowledges it, and the time from sending it to that
+ * acknowledgement goes into a LatencyHistogram. A connection whose game ends starts a new one.
+ */
+public class LoadClient
+{
+    /**
+     * Most actions a connection keeps in flight before it waits for acknowledgements.
+     */
+    private static final int WINDOW = 1024;
+    /**
+     * The actions the generator sends, which are the ones a player's keys and the clock produce.
+     */
+    private static final Action[] ACTIONS = Action.values();
+    /**
+     * Time from sending an action to its acknowledgement.
+     */
+    private LatencyHistogram latency = new LatencyHistogram();
+    /**
+     * Number of actions acknowledged.
+     */
+    private long served;
+    /**
+     * Number of games started.
+     */
+    private long games;
+
+    /**
+     * Runs a load test.
+     * @param address the server.
+     * @param connections the number of concurrent games.
+     * @param seconds how long to send actions.
+     * @param rate the number of actions per second sent on each connection.
+     * @param height the height of every board.
+     * @param width the width of every board.
+     * @throws IOException if a connection fails.
+     */
+    public void run(InetSocketAddress address, int connections, int seconds, int rate, int height, int width) throws IOException {
+        try (Selector selector = Selector.open()) {
+            Connection[] all = new Connection[connections];
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                all[i] = new Connection(channel, height, width, i);
+                channel.register(selector, SelectionKey.OP_READ, all[i]);
+                all[i].open();
+            }
+            long start = System.nanoTime();
+            long end = start + seconds * 1_000_000_000L;
+            long interval = 1_000_000_000L / rate;
+            for (long now = start; now < end; now = System.nanoTime()) {
+                for (Connection connection : all) {
+                    while (connection.nextSend <= now && connection.sent - connection.acked < WINDOW) {
+                        connection.sendAction(now);
+                        connection.nextSend += interval;
+                    }
+                    if (connection.nextSend <= now) {
+                        connection.nextSend = now + interval;
+                    }
+                }
+                selector.select(1);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    ((Connection) key.attachment()).read();
+                }
+                selector.selectedKeys().clear();
+            }
+            for (Connection connection : all) {
+                connection.channel.close();
+            }
+        }
+    }
+
+    /**
+     * One connection to the server and the game it plays.
+     */
+    private class Connection
+    {
+        /**
+         * The connection.
+         */
+        private SocketChannel channel;
+        /**
+         * The height of every board.
+         */
+        private int height;
+        /**
+         * The width of every board.
+         */
+        private int width;
+        /**
+         * Chooses the actions and the seeds.
+         */
+        private SplittableRandom rand;
+        /**
+         * Bytes received but not parsed yet.
+         */
+        private ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        /**
+         * Send time of every action in flight, indexed by its number modulo WINDOW.
+         */
+        private long[] sentAt = new long[WINDOW];
+        /**
+         * Number of actions sent.
+         */
+        private int sent;
+        /**
+         * Number of actions acknowledged.
+         */
+        private int acked;
+        /**
+         * When the next action is due, in nanoseconds.
+         */
+        private long nextSend = System.nanoTime();
+        /**
+         * Whether a new game has been asked for and its first state has not arrived yet;
+         * states of the ended game that arrive meanwhile do not start another one.
+         */
+        private boolean restarting;
+
+        /**
+         * Constructs a connection.
+         * @param channel the connection, in non-blocking mode.
+         * @param height the height of every board.
+         * @param width the width of every board.
+         * @param seed the seed for actions and games.
+         */
+        Connection(SocketChannel channel, int height, int width, long seed) {
+            this.channel = channel;
+            this.height = height;
+            this.width = width;
+            this.rand = new SplittableRandom(seed);
+        }
+
+        /**
+         * Starts a new game.
+         * @throws IOException if the connection fails.
+         */
+        void open() throws IOException {
+            ByteBuffer record = ByteBuffer.allocate(GameServer.OPEN_LENGTH);
+            record.put((byte) GameServer.OPEN).putShort((short) height).putShort((short) width).putLong(rand.nextLong());
+            write(record.flip());
+            games++;
+        }
+
+        /**
+         * Sends one random action.
+         * @param now the current time, in nanoseconds.
+         * @throws IOException if the connection fails.
+         */
+        void sendAction(long now) throws IOException {
+            sentAt[sent % WINDOW] = now;
+            sent++;
+            write(ByteBuffer.wrap(new byte[] {(byte) ACTIONS[rand.nextInt(ACTIONS.length)].ordinal()}));
+        }
+
+        /**
+         * Writes a record in full; records are tiny, so this only spins when the socket buffer is full.
+         * @param record the record.
+         * @throws IOException if the connection fails.
+         */
+        private void write(ByteBuffer record) throws IOException {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        }
+
+        /**
+         * Reads and parses every complete state record, acknowledging the actions it covers.
+         * The input buffer only grows when a single record does not fit in it.
+         * @throws IOException if the connection fails or the server closed it.
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            in.flip();
+            while (in.remaining() >= GameServer.STATE_HEADER) {
+                int base = in.position();
+                int size = in.getShort(base + 10) & 0xFFFF;
+                int rowsAt = base + GameServer.STATE_HEADER + size * size;
+                if (in.limit() < rowsAt + 4) {
+                    break;
+                }
+                int length = rowsAt + 4 + in.getInt(rowsAt) * (4 + width) - base;
+                if (in.remaining() < length) {
+                    break;
+                }
+                if (in.get(base) != GameServer.STATE) {
+                    throw new IOException("Unexpected record " + in.get(base));
+                }
+                int applied = in.getInt(base + 1);
+                long now = System.nanoTime();
+                for (; applied - acked > 0; acked++) {
+                    latency.record(now - sentAt[acked % WINDOW]);
+                    served++;
+                }
+                boolean over = in.get(base + 5) != 0;
+                in.position(base + length);
+                if (!over) {
+                    restarting = false;
+                } else if (!restarting) {
+                    restarting = true;
+                    open();
+                }
+            }
+            if (in.position() == 0 && in.limit() == in.capacity()) {
+                // a record longer than the whole buffer: nothing parsed and no room left to read the rest of it
+                ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                bigger.put(in);
+                in = bigger;
+            } else {
+                in.compact();
+            }
+        }
+    }
+
+    /**
+     * Runs a load test against a server, or against one started in this process when no host is given.
+     * @param args the number of connections, seconds, actions per second per connection,
+     * board height and width, and optionally the server host and port.
+     * @throws IOException if the server cannot be reached.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 5 && args.length != 7)
+        {
+            System.err.println("Usage: java LoadClient <connections> <seconds> <actionsPerSecond> <height> <width> [<host> <port>]");
+            return;
+        }
+        int connections = Integer.parseInt(args[0]);
+        int seconds = Integer.parseInt(args[1]);
+        int rate = Integer.parseInt(args[2]);
+        int height = Integer.parseInt(args[3]);
+        int width = Integer.parseInt(args[4]);
+        GameServer local = null;
+        InetSocketAddress address;
+        if (args.length == 7) {
+            address = new InetSocketAddress(args[5], Integer.parseInt(args[6]));
+        } else {
+            local = new GameServer(new InetSocketAddress("127.0.0.1", 0), Runtime.getRuntime().availableProcessors(), 1000, 500);
+            local.start();
+            address = new InetSocketAddress("127.0.0.1", local.getPort());
+        }
+        LoadClient client = new LoadClient();
+        try {
+            client.run(address, connections, seconds, rate, height, width);
+        } finally {
+            if (local != null) {
+                local.close();
+            }
+        }
+        System.out.printf("connections=%d games=%d actions/s=%.0f latency: %s%n",
+            connections, client.games, client.served / (double) seconds, client.latency.summarize());
+    }
+}
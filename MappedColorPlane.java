@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A color plane kept off the heap in a memory-mapped file, one byte per cell,
+ * so a huge board costs no heap for its colors and is saved and reloaded by mapping the file again.
+ * <p>
+ * Layout of the file, with every int big-endian:
+ * MAGIC, VERSION, height, width; then a row map of one int per row giving the slot that holds the row;
+ * then height slots of width bytes each. Rows move by rewriting the row map, never by copying slots.
+ * A file holds at most 2 GB.
+ */
+public class MappedColorPlane implements ColorPlane
+{
+    /**
+     * First int of every mapped board file.
+     */
+    static final int MAGIC = 0x54544D42;
+    /**
+     * Version of the file layout.
+     */
+    static final int VERSION = 1;
+    /**
+     * Size of the header, in bytes.
+     */
+    private static final int HEADER = 16;
+    /**
+     * The mapped file.
+     */
+    private MappedByteBuffer buffer;
+    /**
+     * The number of rows.
+     */
+    private int height;
+    /**
+     * The number of columns.
+     */
+    private int width;
+    /**
+     * File offset of the first slot.
+     */
+    private int slots;
+    /**
+     * A row of color 0 cells, used to clear rows.
+     */
+    private byte[] zeros;
+
+    /**
+     * Creates a plane in a new file whose cells are all color 0, replacing any existing file.
+     * @param file the file.
+     * @param height the number of rows.
+     * @param width the number of columns.
+     * @return the plane.
+     * @throws IOException if the file cannot be created or mapped.
+     * @throws IllegalArgumentException if the board is too large to map.
+     */
+    public static MappedColorPlane create(Path file, int height, int width) throws IOException { // O(height)
+        long size = HEADER + 4L * height + (long) height * width;
+        if (height < 0 || width < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Board too large to map: " + height + "x" + width);
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, height);
+        buffer.putInt(12, width);
+        for (int i = 0; i < height; i++) {
+            buffer.putInt(HEADER + 4 * i, i);
+        }
+        return new MappedColorPlane(buffer);
+    }
+
+    /**
+     * Maps a plane saved in an existing file.
+     * @param file the file.
+     * @return the plane.
+     * @throws IOException if the file cannot be mapped or is not a mapped board file.
+     */
+    public static MappedColorPlane open(Path file) throws IOException { // O(1)
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < HEADER || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a mapped board: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.capacity() != HEADER + 4L * buffer.getInt(8) + (long) buffer.getInt(8) * buffer.getInt(12)) {
+            throw new IOException("Not a mapped board: " + file);
+        }
+        return new MappedColorPlane(buffer);
+    }
+
+    /**
+     * Constructs a plane over a mapped file whose header is written.
+     * @param buffer the mapped file.
+     */
+    private MappedColorPlane(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.height = buffer.getInt(8);
+        this.width = buffer.getInt(12);
+        this.slots = HEADER + 4 * height;
+        this.zeros = new byte[width];
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return the number of rows.
+     */
+    public int getHeight() { // O(1)
+        return height;
+    }
+
+    /**
+     * Gets the number of columns.
+     * @return the number of columns.
+     */
+    public int getWidth() { // O(1)
+        return width;
+    }
+
+    /**
+     * Gets the color of a cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return the color of the cell.
+     */
+    @Override
+    public byte get(int row, int col) { // O(1)
+        return buffer.get(offset(row) + col);
+    }
+
+    /**
+     * Sets the color of a cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @param color the new color.
+     */
+    @Override
+    public void set(int row, int col, byte color) { // O(1)
+        buffer.put(offset(row) + col, color);
+    }
+
+    /**
+     * Copies the colors of a row into an array with one bulk read.
+     * @param row the row.
+     * @param dst receives the colors.
+     */
+    @Override
+    public void read(int row, byte[] dst) { // O(width)
+        buffer.get(offset(row), dst, 0, width);
+    }
+
+    /**
+     * Exchanges two rows by rewriting the row map.
+     * @param a the first row.
+     * @param b the second row.
+     */
+    @Override
+    public void swap(int a, int b) { // O(1)
+        int temp = buffer.getInt(HEADER + 4 * a);
+        buffer.putInt(HEADER + 4 * a, buffer.getInt(HEADER + 4 * b));
+        buffer.putInt(HEADER + 4 * b, temp);
+    }
+
+    /**
+     * Sets every cell of a row to color 0.
+     * @param row the row.
+     */
+    @Override
+    public void clear(int row) { // O(width)
+        buffer.put(offset(row), zeros);
+    }
+
+    /**
+     * Copies the colors of one row over another.
+     * @param from the row to copy.
+     * @param to the row to overwrite.
+     */
+    @Override
+    public void copy(int from, int to) { // O(width)
+        buffer.put(offset(to), buffer, offset(from), width);
+    }
+
+    /**
+     * Clears a row if its contents need not be kept; rows of a mapped plane are never shared.
+     * @param row the row.
+     * @param keep whether the contents must be kept.
+     */
+    @Override
+    public void detach(int row, boolean keep) { // O(width) if the row is cleared, O(1) otherwise
+        if (!keep) {
+            clear(row);
+        }
+    }
+
+    /**
+     * Copies the plane onto the heap, since the file can only back one plane.
+     * @return a heap plane with the same colors.
+     */
+    @Override
+    public ColorPlane share() { // O(height * width)
+        byte[][] rows = new byte[height][width];
+        for (int i = 0; i < height; i++) {
+            buffer.get(offset(i), rows[i]);
+        }
+        return new HeapColorPlane(rows);
+    }
+
+    /**
+     * Writes every changed page of the file to the storage device.
+     */
+    @Override
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Finds where a row is stored in the file.
+     * @param row the row.
+     * @return the file offset of the row's first cell.
+     */
+    private int offset(int row) { // O(1)
+        return slots + buffer.getInt(HEADER + 4 * row) * width;
+    }
+}
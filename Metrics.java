@@ -0,0 +1,283 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide counters and latency histograms of the game, published as an MXBean.
+ * Counters are LongAdders and histograms are lock-free, so any thread can record without contention.
+ * Collection is off unless the tetris.metrics system property is true or it is turned on over JMX;
+ * while it is off, a count or a timer costs one volatile read and no call to System.nanoTime().
+ * Game counts only come from metered engines (see Engine.setMetered()), which is the one a GameLoop runs;
+ * the engines of BatchRunner, GameServer and Planner are not counted.
+ */
+public final class Metrics implements MetricsMXBean
+{
+    /**
+     * Name the MXBean is registered under.
+     */
+    public static final String NAME = "tetris:type=Metrics";
+    /**
+     * The one instance, which only exists to be registered with JMX; all state is static.
+     */
+    private static final Metrics INSTANCE = new Metrics();
+    /**
+     * Whether counters and timers are recording.
+     */
+    private static volatile boolean enabled = Boolean.getBoolean("tetris.metrics");
+    /**
+     * Number of blocks spawned.
+     */
+    private static final LongAdder pieces = new LongAdder();
+    /**
+     * Number of rows removed by clearRows.
+     */
+    private static final LongAdder rowsCleared = new LongAdder();
+    /**
+     * Number of reward calls.
+     */
+    private static final LongAdder rewards = new LongAdder();
+    /**
+     * Number of penalize calls.
+     */
+    private static final LongAdder penalties = new LongAdder();
+    /**
+     * Number of actions refused by one of their Tetris checks.
+     */
+    private static final LongAdder rejected = new LongAdder();
+    /**
+     * Durations of the game loop ticks.
+     */
+    private static final LatencyHistogram tick = new LatencyHistogram();
+    /**
+     * Durations of consolidate.
+     */
+    private static final LatencyHistogram consolidate = new LatencyHistogram();
+    /**
+     * Durations of paintComponent.
+     */
+    private static final LatencyHistogram paint = new LatencyHistogram();
+
+    /**
+     * The counters and timers are static; use register() to publish them.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Registers the MXBean with the platform MBean server, unless it is already registered.
+     * @throws IllegalStateException if the MBean server refuses it.
+     */
+    public static synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Metrics not registered", e);
+        }
+    }
+
+    /**
+     * Counts a spawned block.
+     */
+    public static void pieceSpawned() { // O(1)
+        if (enabled) {
+            pieces.increment();
+        }
+    }
+
+    /**
+     * Counts rows removed by clearRows.
+     * @param rows the number of rows removed.
+     */
+    public static void rowsCleared(int rows) { // O(1)
+        if (enabled && rows != 0) {
+            rowsCleared.add(rows);
+        }
+    }
+
+    /**
+     * Counts a reward call.
+     */
+    public static void rewarded() { // O(1)
+        if (enabled) {
+            rewards.increment();
+        }
+    }
+
+    /**
+     * Counts a penalize call.
+     */
+    public static void penalized() { // O(1)
+        if (enabled) {
+            penalties.increment();
+        }
+    }
+
+    /**
+     * Passes on whether a Tetris check lets an action go ahead, counting it if it does not.
+     * @param allowed the answer of the check.
+     * @return the same answer.
+     */
+    public static boolean check(boolean allowed) { // O(1)
+        if (!allowed && enabled) {
+            rejected.increment();
+        }
+        return allowed;
+    }
+
+    /**
+     * Starts timing an operation.
+     * @return the start time to hand to one of the stop methods, or 0 if collection is off.
+     */
+    public static long start() { // O(1)
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the duration of a game loop tick.
+     * @param start the value start() returned.
+     */
+    public static void tickDone(long start) { // O(1)
+        if (start != 0) {
+            tick.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the duration of a consolidate.
+     * @param start the value start() returned.
+     */
+    public static void consolidateDone(long start) { // O(1)
+        if (start != 0) {
+            consolidate.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the duration of a paintComponent.
+     * @param start the value start() returned.
+     */
+    public static void paintDone(long start) { // O(1)
+        if (start != 0) {
+            paint.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Checks if metrics are being collected.
+     * @return true if counters and timers are recording, false otherwise.
+     */
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns collection on or off; while it is off, counters and timers keep their values.
+     * @param on true to record, false to stop.
+     */
+    @Override
+    public void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Gets the number of blocks spawned.
+     * @return the piece count.
+     */
+    @Override
+    public long getPiecesSpawned() {
+        return pieces.sum();
+    }
+
+    /**
+     * Gets the number of rows removed by Board.clearRows.
+     * @return the cleared row count.
+     */
+    @Override
+    public long getRowsCleared() {
+        return rowsCleared.sum();
+    }
+
+    /**
+     * Gets the number of Board.reward calls.
+     * @return the reward count.
+     */
+    @Override
+    public long getRewards() {
+        return rewards.sum();
+    }
+
+    /**
+     * Gets the number of Board.penalize calls.
+     * @return the penalty count.
+     */
+    @Override
+    public long getPenalties() {
+        return penalties.sum();
+    }
+
+    /**
+     * Gets the number of actions refused by one of their Tetris checks.
+     * @return the rejected check count.
+     */
+    @Override
+    public long getRejectedChecks() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets the latency of the game loop ticks.
+     * @return the summary of the tick durations.
+     */
+    @Override
+    public LatencyHistogram.Summary getTickLatency() {
+        return tick.summarize();
+    }
+
+    /**
+     * Gets the latency of Board.consolidate.
+     * @return the summary of the consolidate durations.
+     */
+    @Override
+    public LatencyHistogram.Summary getConsolidateLatency() {
+        return consolidate.summarize();
+    }
+
+    /**
+     * Gets the latency of Game.paintComponent.
+     * @return the summary of the paint durations.
+     */
+    @Override
+    public LatencyHistogram.Summary getPaintLatency() {
+        return paint.summarize();
+    }
+
+    /**
+     * Sets every counter back to 0 and forgets every recorded latency.
+     */
+    @Override
+    public void reset() {
+        pieces.reset();
+        rowsCleared.reset();
+        rewards.reset();
+        penalties.reset();
+        rejected.reset();
+        tick.reset();
+        consolidate.reset();
+        paint.reset();
+    }
+
+    /**
+     * Gets the metrics as they would be published over JMX.
+     * @return the MXBean.
+     */
+    public static MetricsMXBean get() { // O(1)
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * The game metrics as published over JMX, for JConsole and JMX scrapers.
+ * Counters only grow until reset() is called; latencies are summarized from their histograms on every read.
+ */
+public interface MetricsMXBean
+{
+    /**
+     * Checks if metrics are being collected.
+     * @return true if counters and timers are recording, false otherwise.
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns collection on or off; while it is off, counters and timers keep their values.
+     * @param enabled true to record, false to stop.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Gets the number of blocks spawned.
+     * @return the piece count.
+     */
+    long getPiecesSpawned();
+
+    /**
+     * Gets the number of rows removed by Board.clearRows.
+     * @return the cleared row count.
+     */
+    long getRowsCleared();
+
+    /**
+     * Gets the number of Board.reward calls.
+     * @return the reward count.
+     */
+    long getRewards();
+
+    /**
+     * Gets the number of Board.penalize calls.
+     * @return the penalty count.
+     */
+    long getPenalties();
+
+    /**
+     * Gets the number of actions refused by one of their Tetris checks.
+     * @return the rejected check count.
+     */
+    long getRejectedChecks();
+
+    /**
+     * Gets the latency of the game loop ticks.
+     * @return the summary of the tick durations.
+     */
+    LatencyHistogram.Summary getTickLatency();
+
+    /**
+     * Gets the latency of Board.consolidate.
+     * @return the summary of the consolidate durations.
+     */
+    LatencyHistogram.Summary getConsolidateLatency();
+
+    /**
+     * Gets the latency of Game.paintComponent.
+     * @return the summary of the paint durations.
+     */
+    LatencyHistogram.Summary getPaintLatency();
+
+    /**
+     * Sets every counter back to 0 and forgets every recorded latency.
+     */
+    void reset();
+}
@@ -0,0 +1,495 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.random.RandomGenerator;
+
+/**
+ * A policy that searches every final placement of the current block and plays towards the best one.
+ * A placement is reached by scaling the block where it is, then rotating or flipping it, then moving it sideways,
+ * then hard dropping it; every step must be allowed by the Tetris.can* rules, exactly as Engine.step applies them.
+ * Placements are enumerated on the calling thread, on a private copy of the board made once per plan;
+ * a placement only records which oriented block it moves sideways, and how far.
+ * They are then dropped, cleared and scored in parallel on a ForkJoinPool until the time budget runs out:
+ * every task copies the board once and undoes each placement through a Journal before the next one.
+ * The planner keeps no state between calls, so one planner can play many games at once.
+ */
+public class Planner implements Policy
+{
+    /**
+     * Scores a board after a placement; higher is better.
+     */
+    public interface Heuristic
+    {
+        /**
+         * A linear score over holes, aggregate height and cleared rows with the usual weights for Tetris bots.
+         */
+        Heuristic DEFAULT = weighted(-0.36, -0.51, 0.76);
+
+        /**
+         * Scores a board.
+         * @param board the board after the block was locked and its complete rows were cleared.
+         * @param rowsCleared the number of rows that clearRows removed.
+         * @return the score.
+         */
+        double score(Board board, int rowsCleared);
+
+        /**
+         * Creates a linear heuristic.
+         * A hole is an empty cell below the highest tile of its column;
+         * the aggregate height is the sum of the heights of all columns.
+         * @param holes the weight of every hole.
+         * @param height the weight of every row of aggregate height.
+         * @param lines the weight of every cleared row.
+         * @return the heuristic.
+         */
+        static Heuristic weighted(double holes, double height, double lines) {
+            return (board, rowsCleared) -> {
+                int aggregate = 0;
+                for (int x = 0; x < board.getWidth(); x++) {
+                    aggregate += board.getColumnHeight(x);
+                }
+                int tiles = 0;
+                for (int y = 0; y < board.getHeight(); y++) {
+                    tiles += board.getCount(y);
+                }
+                return holes * (aggregate - tiles) + height * aggregate + lines * rowsCleared;
+            };
+        }
+    }
+
+    /**
+     * Action sequences that reach each of the 8 orientations of a block.
+     */
+    private static final Action[][] ORIENTATIONS = {
+        {},
+        {Action.ROTATE},
+        {Action.ROTATE, Action.ROTATE},
+        {Action.ROTATE, Action.ROTATE, Action.ROTATE},
+        {Action.FLIP_HORIZONTAL},
+        {Action.FLIP_HORIZONTAL, Action.ROTATE},
+        {Action.FLIP_HORIZONTAL, Action.ROTATE, Action.ROTATE},
+        {Action.FLIP_HORIZONTAL, Action.ROTATE, Action.ROTATE, Action.ROTATE}
+    };
+    /**
+     * Fewest placements scored by one task.
+     */
+    private static final int CHUNK = 8;
+    /**
+     * Number of tasks per pool thread the placements are split into, so that threads that finish early can steal work;
+     * every task copies the board once, so more tasks only cost more copies.
+     */
+    private static final int TASKS_PER_THREAD = 4;
+    /**
+     * Scores the placements.
+     */
+    private Heuristic heuristic;
+    /**
+     * Time allowed for one search, in nanoseconds.
+     */
+    private long budget;
+    /**
+     * The most times the block is scaled up, and the most times it is scaled down, before it is placed.
+     */
+    private int scales;
+    /**
+     * The pool that scores the placements.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Constructs a planner that scores placements on the common pool.
+     * @param heuristic scores the placements.
+     * @param budget time allowed for one search, in nanoseconds.
+     * @param scales the most times the block is scaled in either direction before it is placed.
+     */
+    public Planner(Heuristic heuristic, long budget, int scales) {
+        this(heuristic, budget, scales, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a planner.
+     * @param heuristic scores the placements.
+     * @param budget time allowed for one search, in nanoseconds.
+     * @param scales the most times the block is scaled in either direction before it is placed.
+     * @param pool the pool that scores the placements.
+     */
+    public Planner(Heuristic heuristic, long budget, int scales, ForkJoinPool pool) {
+        this.heuristic = heuristic;
+        this.budget = budget;
+        this.scales = scales;
+        this.pool = pool;
+    }
+
+    /**
+     * Chooses the first action of the best plan for the current block.
+     * The search is repeated for every action, so the plan follows the game however it got there.
+     * @param engine the game, which must not be modified.
+     * @param rand unused; the search is deterministic.
+     * @return the action to apply next.
+     */
+    @Override
+    public Action next(Engine engine, RandomGenerator rand) { // O(plan)
+        return plan(engine).get(0);
+    }
+
+    /**
+     * Finds the best placement of the current block that can be scored within the time budget.
+     * The placement that keeps the block as it is and drops it straight down is always scored,
+     * so a plan is returned however small the budget is.
+     * Enumerating placements stops at half the budget, so that the rest is left to score them.
+     * The game's board is only read, once, to copy it; nothing is written to it.
+     * Must be called by the thread that drives the game.
+     * @param engine the game, which must not be modified.
+     * @return the actions that reach the placement, ending with HARD_DROP; just TICK once the game is over.
+     */
+    public List<Action> plan(Engine engine) { // O(height * width) to copy the board, O(placements * block_size) to enumerate, O(placements * (height + width + block_size)) to score
+        if (engine.isGameOver()) {
+            return List.of(Action.TICK);
+        }
+        long start = System.nanoTime();
+        long deadline = start + budget;
+        long enumerated = start + budget / 2;
+        List<Placement> placements = new ArrayList<>();
+        // a snapshot shares every row, so the scoring tasks copy it without copying any row
+        Board base = engine.getBoard().copy().snapshot();
+        boolean inTime = enumerate(base, engine.getBlock(), new ArrayList<>(), placements, enumerated);
+
+        Board board = base;
+        Block block = engine.getBlock();
+        List<Action> up = new ArrayList<>();
+        for (int i = 0; i < scales && inTime && Tetris.canScaleUp(board, block); i++) {
+            board = board.snapshot();
+            block = block.scaleUp();
+            board.reward();
+            up.add(Action.SCALE_UP);
+            inTime = enumerate(board, block, up, placements, enumerated);
+        }
+        board = base;
+        block = engine.getBlock();
+        List<Action> down = new ArrayList<>();
+        for (int i = 0; i < scales && inTime && Tetris.canScaleDown(board, block); i++) {
+            Block scaled = block.scaleDown();
+            if (Tetris.isGameOver(board, scaled)) {
+                break;
+            }
+            board = board.snapshot();
+            block = scaled;
+            board.penalize();
+            down.add(Action.SCALE_DOWN);
+            inTime = enumerate(board, block, down, placements, enumerated);
+        }
+
+        double[] scores = new double[placements.size()];
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        ForkJoinPool runner = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : pool;
+        int chunk = Math.max(CHUNK, placements.size() / (TASKS_PER_THREAD * runner.getParallelism()));
+        Search search = new Search(placements, scores, deadline, chunk, 0, placements.size());
+        int best = ForkJoinTask.inForkJoinPool() ? search.invoke() : pool.invoke(search);
+        return placements.get(best).actions();
+    }
+
+    /**
+     * Adds every placement reachable by transforming and moving a block, without scaling it further, until the deadline passes.
+     * Orientations that give the same shape as an earlier one are skipped,
+     * and a block without tiles, which every move leaves fitting, is only placed where it is.
+     * The block as it stands is always placed, whatever the time.
+     * @param board the board as it is once the block has been scaled; it is only read, here and by the scoring tasks.
+     * @param block the block once it has been scaled; it is not changed.
+     * @param prefix the scaling actions that led here.
+     * @param placements receives the placements.
+     * @param deadline the System.nanoTime() after which no more placements are added.
+     * @return true if every placement was added before the deadline, false otherwise.
+     */
+    private static boolean enumerate(Board board, Block block, List<Action> prefix, List<Placement> placements, long deadline) { // O(orientations * (block_size + width * block_size / 64))
+        if (block.getTileCount() == 0) {
+            placements.add(new Placement(board, block.copy(), new ArrayList<>(prefix), null, 0));
+            return System.nanoTime() <= deadline;
+        }
+        List<long[][]> shapes = new ArrayList<>();
+        for (Action[] orientation : ORIENTATIONS) {
+            Block oriented = block.copy();
+            List<Action> actions = new ArrayList<>(prefix);
+            boolean reached = true;
+            for (Action action : orientation) {
+                reached = reached && apply(board, oriented, action);
+                actions.add(action);
+            }
+            if (!reached || contains(shapes, oriented.getRowMasks())) {
+                continue;
+            }
+            shapes.add(oriented.getRowMasks());
+
+            placements.add(new Placement(board, oriented, actions, null, 0));
+            for (Action side : new Action[] {Action.LEFT, Action.RIGHT}) {
+                Block moved = oriented.copy();
+                for (int moves = 1; System.nanoTime() <= deadline && apply(board, moved, side); moves++) {
+                    placements.add(new Placement(board, oriented, actions, side, moves));
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies a move or transform to a block if the rules allow it, as Engine.step does.
+     * @param board the game board.
+     * @param block the block to change.
+     * @param action one of LEFT, RIGHT, ROTATE, FLIP_VERTICAL or FLIP_HORIZONTAL.
+     * @return true if the block changed, false otherwise.
+     */
+    private static boolean apply(Board board, Block block, Action action) { // O(block_size / 64)
+        switch (action) {
+            case LEFT:
+                if (Tetris.canMoveLeft(board, block)) {
+                    block.moveLeft();
+                    return true;
+                }
+                return false;
+            case RIGHT:
+                if (Tetris.canMoveRight(board, block)) {
+                    block.moveRight();
+                    return true;
+                }
+                return false;
+            case ROTATE:
+                if (Tetris.canRotate(board, block)) {
+                    block.rotate();
+                    return true;
+                }
+                return false;
+            case FLIP_VERTICAL:
+                if (Tetris.canflipVertical(board, block)) {
+                    block.flipVertical();
+                    return true;
+                }
+                return false;
+            case FLIP_HORIZONTAL:
+                if (Tetris.canflipHorizontal(board, block)) {
+                    block.flipHorizontal();
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks if a shape is among the shapes seen so far.
+     * @param shapes the row bitmasks seen so far.
+     * @param masks the row bitmasks to look for.
+     * @return true if an equal shape was seen, false otherwise.
+     */
+    private static boolean contains(List<long[][]> shapes, long[][] masks) { // O(shapes * block_size / 64)
+        for (long[][] shape : shapes) {
+            if (Arrays.deepEquals(shape, masks)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A final placement of the block: an oriented block moved some columns sideways, before the hard drop.
+     * Placements only hold references, so enumerating one costs O(1) beyond checking that its move is allowed.
+     */
+    private static class Placement
+    {
+        /**
+         * The board the block lands on, shared by every placement with the same scaling; it is only read.
+         */
+        private Board board;
+        /**
+         * The block, scaled and transformed but not yet moved sideways, shared by the placements that move it; it is only read.
+         */
+        private Block block;
+        /**
+         * The scaling and transforming actions that reach the block, shared by the placements that move it.
+         */
+        private List<Action> prefix;
+        /**
+         * The direction the block is moved in, LEFT or RIGHT, or null if it stays where it is.
+         */
+        private Action side;
+        /**
+         * The number of columns the block is moved.
+         */
+        private int moves;
+
+        /**
+         * Constructs a placement.
+         * @param board the board the block lands on, which nothing writes to any more.
+         * @param block the block before it is moved sideways, which nothing changes any more.
+         * @param prefix the actions that reach the block, which nothing changes any more.
+         * @param side the direction the block is moved in, or null.
+         * @param moves the number of columns the block is moved.
+         */
+        Placement(Board board, Block block, List<Action> prefix, Action side, int moves) {
+            this.board = board;
+            this.block = block;
+            this.prefix = prefix;
+            this.side = side;
+            this.moves = moves;
+        }
+
+        /**
+         * Lists the actions that reach the placement.
+         * @return the actions, ending with HARD_DROP.
+         */
+        List<Action> actions() { // O(prefix + moves)
+            List<Action> actions = new ArrayList<>(prefix);
+            for (int i = 0; i < moves; i++) {
+                actions.add(side);
+            }
+            actions.add(Action.HARD_DROP);
+            return actions;
+        }
+    }
+
+    /**
+     * Scores a range of placements, splitting it in half until it is at most one chunk long, and finds the best one.
+     * ForkJoinTask is Serializable, but these tasks never leave the pool that runs them.
+     */
+    @SuppressWarnings("serial")
+    private class Search extends RecursiveTask<Integer>
+    {
+        /**
+         * Every placement of the search.
+         */
+        private List<Placement> placements;
+        /**
+         * The score of every placement, or negative infinity if it was not scored in time.
+         */
+        private double[] scores;
+        /**
+         * The System.nanoTime() after which no more placements are scored.
+         */
+        private long deadline;
+        /**
+         * The most placements scored by one task.
+         */
+        private int chunk;
+        /**
+         * The first placement of the range.
+         */
+        private int from;
+        /**
+         * The placement after the last one of the range.
+         */
+        private int to;
+
+        /**
+         * Constructs the task for a range of placements.
+         * @param placements every placement of the search.
+         * @param scores receives the score of every placement.
+         * @param deadline the System.nanoTime() after which no more placements are scored.
+         * @param chunk the most placements scored by one task.
+         * @param from the first placement of the range.
+         * @param to the placement after the last one of the range.
+         */
+        Search(List<Placement> placements, double[] scores, long deadline, int chunk, int from, int to) {
+            this.placements = placements;
+            this.scores = scores;
+            this.deadline = deadline;
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Scores the range, or splits it and scores both halves in parallel.
+         * @return the index of the best placement of the range; the earliest one wins a tie.
+         */
+        @Override
+        protected Integer compute() {
+            if (to - from <= chunk) {
+                int best = from;
+                Journal journal = new Journal(Long.MAX_VALUE);
+                Board source = null;
+                Board scratch = null;
+                Block oriented = null;
+                Block block = null;
+                Action side = null;
+                int moves = 0;
+                for (int i = from; i < to; i++) {
+                    if (i > 0 && System.nanoTime() > deadline) {
+                        break;
+                    }
+                    Placement placement = placements.get(i);
+                    if (placement.board != source) {
+                        source = placement.board;
+                        scratch = source.copy();
+                        scratch.setJournal(journal);
+                    }
+                    if (placement.block != oriented || placement.side != side || placement.moves < moves) {
+                        oriented = placement.block;
+                        side = placement.side;
+                        block = oriented.copy();
+                        moves = 0;
+                    }
+                    for (; moves < placement.moves; moves++) {
+                        if (side == Action.LEFT) {
+                            block.moveLeft();
+                        } else {
+                            block.moveRight();
+                        }
+                    }
+                    int distance = Tetris.dropDistance(scratch, block);
+                    block.drop(distance);
+                    scratch.consolidate(block);
+                    scores[i] = heuristic.score(scratch, scratch.clearRows());
+                    journal.undo();
+                    block.drop(-distance);
+                    if (scores[i] > scores[best]) {
+                        best = i;
+                    }
+                }
+                return best;
+            }
+            int middle = (from + to) >>> 1;
+            Search left = new Search(placements, scores, deadline, chunk, from, middle);
+            Search right = new Search(placements, scores, deadline, chunk, middle, to);
+            right.fork();
+            int a = left.compute();
+            int b = right.join();
+            return scores[b] > scores[a] ? b : a;
+        }
+    }
+
+    /**
+     * Plays one seeded game with the planner and reports how it went and how long the searches took.
+     * @param args the board height and width, the search budget in microseconds and the step limit.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 4)
+        {
+            System.err.println("Usage: java Planner <height> <width> <budgetMicros> <maxSteps>");
+            return;
+        }
+        int height = Integer.parseInt(args[0]);
+        int width = Integer.parseInt(args[1]);
+        long budget = Long.parseLong(args[2]) * 1000;
+        long maxSteps = Long.parseLong(args[3]);
+        Planner planner = new Planner(Heuristic.DEFAULT, budget, 1);
+        Engine engine = new Engine(height, width, 42);
+
+        long steps = 0;
+        long nanos = 0;
+        while (!engine.isGameOver() && steps < maxSteps) {
+            long start = System.nanoTime();
+            Action action = planner.next(engine, null);
+            nanos += System.nanoTime() - start;
+            engine.step(action);
+            steps++;
+        }
+        System.out.printf("steps=%d pieces=%d rows=%d over=%b search_us=%.1f%n",
+            steps, engine.getPieces(), engine.getRowsCleared(), engine.isGameOver(), nanos / 1e3 / Math.max(steps, 1));
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * Chooses the next action for a headless game, for example a bot being evaluated in a batch run.
+ */
+public interface Policy
+{
+    /**
+     * A policy that presses a random key or lets the clock tick, each with equal chance.
+     */
+    Policy RANDOM = new Policy() {
+        /**
+         * Every action, indexed by ordinal, fetched once because values() copies the array on every call.
+         */
+        private static final Action[] ACTIONS = Action.values();
+
+        /**
+         * Picks one of the actions uniformly.
+         * @param engine the game, which is not looked at.
+         * @param rand the per-game random source reserved for the policy.
+         * @return the action to apply next.
+         */
+        @Override
+        public Action next(Engine engine, RandomGenerator rand) { // O(1)
+            return ACTIONS[rand.nextInt(ACTIONS.length)];
+        }
+    };
+
+    /**
+     * Chooses the next action to apply.
+     * @param engine the game, which must not be modified.
+     * @param rand the per-game random source reserved for the policy.
+     * @return the action to apply next.
+     */
+    Action next(Engine engine, RandomGenerator rand);
+}
@@ -0,0 +1,213 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import javax.swing.JComponent;
+
+/**
+ * Draws snapshots of a game, redrawing only what changed since the last frame.
+ * The board is cached in a back-buffer image in which only rows whose version stamp moved are redrawn,
+ * and repaints are requested for just the changed rows and the old and new block squares,
+ * so Swing clips every frame to those regions.
+ * The time spent painting is measured, giving a frames-per-second and milliseconds-per-frame figure.
+ */
+public class Renderer
+{
+    /**
+     * Size of one cell on screen, in pixels.
+     */
+    public static final int CELL = 20;
+    /**
+     * Length of the window over which the frame statistics are averaged, in nanoseconds.
+     */
+    private static final long STATS_WINDOW = 1_000_000_000L;
+    /**
+     * Screen color of every tile color; entry 0 is the color of an empty cell.
+     */
+    private Color[] palette;
+    /**
+     * Back-buffer holding the board as of version painted, or null before the first frame.
+     */
+    private BufferedImage image;
+    /**
+     * Board version drawn into the back-buffer, or -1 if nothing has been drawn yet.
+     */
+    private long painted = -1;
+    /**
+     * Board version up to which repaints have been requested, or -1 if none have been.
+     */
+    private long requested = -1;
+    /**
+     * Screen area of the block at the last request, or null if none has been made.
+     */
+    private Rectangle blockBounds;
+    /**
+     * Frames painted in the current statistics window.
+     */
+    private int frames;
+    /**
+     * Time spent painting in the current statistics window, in nanoseconds.
+     */
+    private long frameNanos;
+    /**
+     * Start of the current statistics window, in nanoseconds.
+     */
+    private long windowStart = System.nanoTime();
+    /**
+     * Frame statistics of the last complete window.
+     */
+    private volatile String stats = "fps=0.0 ms/frame=0.00";
+
+    /**
+     * Constructs a renderer.
+     * @param palette screen color of every tile color; entry 0 is the color of an empty cell.
+     */
+    public Renderer(Color[] palette)
+    {
+        this.palette = palette;
+    }
+
+    /**
+     * Requests a repaint of the rows that changed since the last request and of the block's old and new squares.
+     * May be called from any thread.
+     * @param component the component showing the game.
+     * @param board the snapshot about to be shown.
+     */
+    public synchronized void invalidate(JComponent component, Snapshot board) // O(height)
+    {
+        long version = board.getVersion();
+        if (version != requested)
+        {
+            int first = -1;
+            for (int y = 0; y <= board.getHeight(); y++)
+            {
+                boolean changed = y < board.getHeight() && board.getRowVersion(y) > requested;
+                if (changed && first == -1)
+                    first = y;
+                else if (!changed && first != -1)
+                {
+                    component.repaint(0, first * CELL, board.getWidth() * CELL, (y - first) * CELL);
+                    first = -1;
+                }
+            }
+            requested = version;
+        }
+
+        int size = board.getBlockSize() * CELL;
+        Rectangle bounds = new Rectangle(board.getBlockX() * CELL, board.getBlockY() * CELL, size, size);
+        if (blockBounds != null && !blockBounds.equals(bounds))
+            component.repaint(blockBounds);
+        component.repaint(bounds);
+        blockBounds = bounds;
+    }
+
+    /**
+     * Paints the board and the block, bringing the back-buffer up to date first.
+     * Only the area inside the clip of the graphics object reaches the screen.
+     * Must be called on the event dispatch thread, with snapshots of one game in the order they were taken.
+     * @param g the graphics object.
+     * @param board the snapshot to show.
+     */
+    public void paint(Graphics g, Snapshot board) // O(height + changed_rows * width + block_size^2)
+    {
+        long start = System.nanoTime();
+        if (image == null || image.getWidth() != board.getWidth() * CELL || image.getHeight() != board.getHeight() * CELL)
+        {
+            image = new BufferedImage(board.getWidth() * CELL, board.getHeight() * CELL, BufferedImage.TYPE_INT_RGB);
+            painted = -1;
+        }
+        long version = board.getVersion();
+        if (version != painted)
+        {
+            Graphics2D buffer = image.createGraphics();
+            try
+            {
+                for (int y = 0; y < board.getHeight(); y++)
+                    if (board.getRowVersion(y) > painted)
+                        drawRow(buffer, board, y);
+            }
+            finally
+            {
+                buffer.dispose();
+            }
+            painted = version;
+        }
+        g.drawImage(image, 0, 0, null);
+        drawBlock(g, board);
+        record(start, System.nanoTime());
+    }
+
+    /**
+     * Gets the frame statistics of the last complete window of about a second.
+     * @return the frames painted per second and the average time spent painting one frame.
+     */
+    public String getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Draws one board row into the back-buffer.
+     * @param g the graphics object of the back-buffer.
+     * @param board the snapshot to show.
+     * @param y the row to draw.
+     */
+    private void drawRow(Graphics g, Snapshot board, int y) // O(width)
+    {
+        g.setColor(palette[0]);
+        g.fillRect(0, CELL * y, CELL * board.getWidth(), CELL);
+        for (int x = 0; x < board.getWidth(); x++)
+        {
+            byte color = board.getColor(y, x);
+            if (color != 0)
+            {
+                g.setColor(palette[color]);
+                g.fillRect(CELL * x, CELL * y, CELL, CELL);
+            }
+        }
+    }
+
+    /**
+     * Draws the tiles of the block that fall inside the clip.
+     * @param g the graphics object.
+     * @param board the snapshot to show.
+     */
+    private void drawBlock(Graphics g, Snapshot board) // O(block_size^2)
+    {
+        Rectangle clip = g.getClipBounds();
+        for (int y = 0; y < board.getBlockSize(); y++)
+            for (int x = 0; x < board.getBlockSize(); x++)
+            {
+                int left = CELL * (x + board.getBlockX());
+                int top = CELL * (y + board.getBlockY());
+                if (clip != null && !clip.intersects(left, top, CELL, CELL))
+                    continue;
+                byte color = board.getBlockColor(y, x);
+                if (color != 0)
+                {
+                    g.setColor(palette[color]);
+                    g.fillRect(left, top, CELL, CELL);
+                }
+            }
+    }
+
+    /**
+     * Adds a painted frame to the statistics, closing the window once it is a second long.
+     * @param start when painting began, in nanoseconds.
+     * @param end when painting ended, in nanoseconds.
+     */
+    private void record(long start, long end)
+    {
+        frames++;
+        frameNanos += end - start;
+        long elapsed = end - windowStart;
+        if (elapsed >= STATS_WINDOW)
+        {
+            stats = String.format("fps=%.1f ms/frame=%.2f", frames * 1e9 / elapsed, frameNanos / 1e6 / frames);
+            frames = 0;
+            frameNanos = 0;
+            windowStart = end;
+        }
+    }
+}
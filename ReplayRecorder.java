@@ -0,0 +1,313 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records a game to a compact binary replay log that Replayer can play back.
+ * The recorder owns the game it records: create it, play through getEngine(), and call record() after every step.
+ * <p>
+ * Layout of a log, with every number an unsigned LEB128 varint unless noted:
+ * <ul>
+ * <li>header: MAGIC (4 bytes), VERSION (1 byte), height, width, keyframe interval, seed (8 bytes);</li>
+ * <li>action run: ((run length - 1) &lt;&lt; 4) | action ordinal, for repeats of one action;</li>
+ * <li>keyframe: KEYFRAME, then the number of actions before it, random draws, ticks, pieces, rows cleared,
+ * zigzag block y and x, block size, one color byte per block cell, and per board row its tile count
+ * followed by one color byte per column if the count is not zero;</li>
+ * <li>end: END, the number of keyframes, then the action count and file offset of each,
+ * then the offset of END (8 bytes) and INDEX_MAGIC (4 bytes).</li>
+ * </ul>
+ * A keyframe is written every time the given number of pieces has spawned, so a replay can seek
+ * without running the game from the start. A log cut short, for example by a crash, loses only its index.
+ */
+public class ReplayRecorder implements Closeable
+{
+    /**
+     * First four bytes of every replay log.
+     */
+    static final int MAGIC = 0x5454524C;
+    /**
+     * Last four bytes of a replay log that was closed properly.
+     */
+    static final int INDEX_MAGIC = 0x54545249;
+    /**
+     * Version of the log layout.
+     */
+    static final int VERSION = 1;
+    /**
+     * Record code of the end of the log.
+     */
+    static final int END = 14;
+    /**
+     * Record code of a keyframe.
+     */
+    static final int KEYFRAME = 15;
+    /**
+     * Size of the write buffer, in bytes.
+     */
+    private static final int BUFFER = 1 << 16;
+    /**
+     * The file being written.
+     */
+    private FileChannel channel;
+    /**
+     * Bytes waiting to be written to the file.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+    /**
+     * Number of bytes handed to the file so far, not counting the buffer.
+     */
+    private long written;
+    /**
+     * The game being recorded.
+     */
+    private Engine engine;
+    /**
+     * The random source of the game, whose draw count goes into keyframes.
+     */
+    private CountingRandom rand;
+    /**
+     * Number of pieces between two keyframes.
+     */
+    private int keyframeEvery;
+    /**
+     * Piece count at which the next keyframe is written.
+     */
+    private long nextKeyframe;
+    /**
+     * Number of actions recorded so far.
+     */
+    private long actions;
+    /**
+     * Action of the run not written yet, or null if there is none.
+     */
+    private Action runAction;
+    /**
+     * Length of the run not written yet.
+     */
+    private long runLength;
+    /**
+     * Number of keyframes written so far.
+     */
+    private int keyframes;
+    /**
+     * Action count of every keyframe written so far.
+     */
+    private long[] keyActions = new long[16];
+    /**
+     * File offset of every keyframe written so far.
+     */
+    private long[] keyOffsets = new long[16];
+    /**
+     * Whether the log has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Starts a new game and a log for it, replacing any existing file.
+     * @param file the log file.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @param seed the seed of the game.
+     * @param keyframeEvery the number of pieces between two keyframes.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if the keyframe interval is not positive.
+     */
+    public ReplayRecorder(Path file, int height, int width, long seed, int keyframeEvery) throws IOException {
+        if (keyframeEvery <= 0) {
+            throw new IllegalArgumentException("Invalid keyframe interval: " + keyframeEvery);
+        }
+        this.rand = new CountingRandom(seed);
+        this.engine = new Engine(height, width, rand);
+        this.keyframeEvery = keyframeEvery;
+        this.nextKeyframe = engine.getPieces() + keyframeEvery;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ensure(4 + 1 + 8);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        putVarint(height);
+        putVarint(width);
+        putVarint(keyframeEvery);
+        ensure(8);
+        buffer.putLong(seed);
+    }
+
+    /**
+     * Gets the game being recorded.
+     * @return the game.
+     */
+    public Engine getEngine() { // O(1)
+        return engine;
+    }
+
+    /**
+     * Applies an action to the game and records it.
+     * @param action the action to apply.
+     * @return true if the board or block changed, false otherwise.
+     * @throws IOException if the log cannot be written.
+     */
+    public boolean step(Action action) throws IOException { // O(1) amortized, plus O(height * width) per keyframe
+        boolean changed = engine.step(action);
+        record(action);
+        return changed;
+    }
+
+    /**
+     * Records an action that was just applied to the game, writing a keyframe if one is due.
+     * @param action the action that was applied.
+     * @throws IOException if the log cannot be written.
+     */
+    public void record(Action action) throws IOException { // O(1) amortized, plus O(height * width) per keyframe
+        if (action == runAction) {
+            runLength++;
+        } else {
+            flushRun();
+            runAction = action;
+            runLength = 1;
+        }
+        actions++;
+        if (!engine.isGameOver() && engine.getPieces() >= nextKeyframe) {
+            flushRun();
+            keyframe();
+            nextKeyframe = engine.getPieces() + keyframeEvery;
+        }
+    }
+
+    /**
+     * Writes the keyframe index and closes the log. Calling it again has no effect.
+     * @throws IOException if the log cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushRun();
+            long indexOffset = written + buffer.position();
+            putVarint(END);
+            putVarint(keyframes);
+            for (int i = 0; i < keyframes; i++) {
+                putVarint(keyActions[i]);
+                putVarint(keyOffsets[i]);
+            }
+            ensure(8 + 4);
+            buffer.putLong(indexOffset);
+            buffer.putInt(INDEX_MAGIC);
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the pending run of actions, if any.
+     * @throws IOException if the log cannot be written.
+     */
+    private void flushRun() throws IOException {
+        if (runAction != null) {
+            putVarint(((runLength - 1) << 4) | runAction.ordinal());
+            runAction = null;
+            runLength = 0;
+        }
+    }
+
+    /**
+     * Writes a keyframe of the whole game state and adds it to the index.
+     * @throws IOException if the log cannot be written.
+     */
+    private void keyframe() throws IOException { // O(height * width)
+        if (keyframes == keyActions.length) {
+            keyActions = Arrays.copyOf(keyActions, 2 * keyframes);
+            keyOffsets = Arrays.copyOf(keyOffsets, 2 * keyframes);
+        }
+        keyActions[keyframes] = actions;
+        keyOffsets[keyframes] = written + buffer.position();
+        keyframes++;
+
+        putVarint(KEYFRAME);
+        putVarint(actions);
+        putVarint(rand.getDraws());
+        putVarint(engine.getTicks());
+        putVarint(engine.getPieces());
+        putVarint(engine.getRowsCleared());
+        Block block = engine.getBlock();
+        putVarint(zigzag(block.getY()));
+        putVarint(zigzag(block.getX()));
+        putVarint(block.getSize());
+        for (int i = 0; i < block.getSize(); i++) {
+            for (int j = 0; j < block.getSize(); j++) {
+                putColor(block.getTile(i, j));
+            }
+        }
+        Board board = engine.getBoard();
+        for (int y = 0; y < board.getHeight(); y++) {
+            putVarint(board.getCount(y));
+            if (board.getCount(y) != 0) {
+                for (int x = 0; x < board.getWidth(); x++) {
+                    putColor(board.getTile(y, x));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the color of a tile as one byte.
+     * @param tile the tile, or null for an empty cell, which is written as color 0.
+     * @throws IOException if the log cannot be written.
+     */
+    private void putColor(Tile tile) throws IOException {
+        ensure(1);
+        buffer.put(tile == null ? 0 : tile.getColor());
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint: seven bits per byte, low bits first, high bit set on all but the last byte.
+     * @param value the value, read as unsigned.
+     * @throws IOException if the log cannot be written.
+     */
+    private void putVarint(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Maps a signed value to an unsigned one so that small negative values stay short as varints.
+     * @param value the signed value.
+     * @return the zigzag encoding of the value.
+     */
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Makes room in the buffer, writing it to the file if needed.
+     * @param bytes the number of bytes about to be put.
+     * @throws IOException if the log cannot be written.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the whole buffer to the file.
+     * @throws IOException if the log cannot be written.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
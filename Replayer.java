@@ -0,0 +1,463 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Plays back a replay log written by ReplayRecorder on a headless game, as fast as the CPU allows.
+ * Seeking restores the nearest keyframe at or before the target and runs the game forward from there.
+ * Keyframes are found through the index at the end of the log; a log without an index,
+ * for example one cut short by a crash, can only seek to keyframes it has already played past.
+ */
+public class Replayer implements Closeable
+{
+    /**
+     * Size of the read buffer, in bytes.
+     */
+    private static final int BUFFER = 1 << 16;
+    /**
+     * Every action, indexed by ordinal.
+     */
+    private static final Action[] ACTIONS = Action.values();
+    /**
+     * The file being read.
+     */
+    private FileChannel channel;
+    /**
+     * Bytes read from the file and not consumed yet.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+    /**
+     * File offset of the first byte in the buffer.
+     */
+    private long bufferStart;
+    /**
+     * The height of the board.
+     */
+    private int height;
+    /**
+     * The width of the board.
+     */
+    private int width;
+    /**
+     * The seed of the game.
+     */
+    private long seed;
+    /**
+     * File offset of the first record after the header.
+     */
+    private long dataStart;
+    /**
+     * Number of keyframes known so far.
+     */
+    private int keyframes;
+    /**
+     * Action count of every known keyframe, in increasing order.
+     */
+    private long[] keyActions = new long[16];
+    /**
+     * File offset of every known keyframe.
+     */
+    private long[] keyOffsets = new long[16];
+    /**
+     * The game being played back.
+     */
+    private Engine engine;
+    /**
+     * Number of actions applied so far.
+     */
+    private long position;
+    /**
+     * Action of the run being played.
+     */
+    private Action runAction;
+    /**
+     * Number of actions left in the run being played.
+     */
+    private long runLeft;
+    /**
+     * Whether the end of the log has been reached.
+     */
+    private boolean ended;
+
+    /**
+     * Opens a replay log and positions it before its first action.
+     * @param file the log file.
+     * @throws IOException if the file cannot be read or is not a replay log.
+     */
+    public Replayer(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            moveTo(0);
+            if (readInt() != ReplayRecorder.MAGIC || readByte() != ReplayRecorder.VERSION) {
+                throw new IOException("Not a replay log: " + file);
+            }
+            height = (int) readVarint();
+            width = (int) readVarint();
+            readVarint();
+            seed = readLong();
+            dataStart = offset();
+            readIndex();
+            restart();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the game being played back.
+     * The game is replaced whenever a seek restores a keyframe, so fetch it again after seeking.
+     * @return the game.
+     */
+    public Engine getEngine() { // O(1)
+        return engine;
+    }
+
+    /**
+     * Gets the number of actions applied so far.
+     * @return the action count.
+     */
+    public long getPosition() { // O(1)
+        return position;
+    }
+
+    /**
+     * Applies the next action of the log.
+     * @return true if an action was applied, false at the end of the log.
+     * @throws IOException if the log cannot be read or is corrupt.
+     */
+    public boolean next() throws IOException { // O(1) amortized, plus the cost of the step
+        while (runLeft == 0) {
+            if (ended || !fill()) {
+                ended = true;
+                return false;
+            }
+            long start = offset();
+            long code = readVarint();
+            int op = (int) (code & 15);
+            if (op == ReplayRecorder.END) {
+                ended = true;
+                return false;
+            }
+            if (op == ReplayRecorder.KEYFRAME) {
+                long actions = readVarint();
+                skipKeyframe();
+                if (keyframes == 0 || keyActions[keyframes - 1] < actions) {
+                    addKeyframe(actions, start);
+                }
+                continue;
+            }
+            if (op >= ACTIONS.length) {
+                throw new IOException("Corrupt replay log: unknown action " + op + " at offset " + start);
+            }
+            runAction = ACTIONS[op];
+            runLeft = (code >>> 4) + 1;
+        }
+        engine.step(runAction);
+        runLeft--;
+        position++;
+        return true;
+    }
+
+    /**
+     * Plays the rest of the log.
+     * @return the number of actions applied.
+     * @throws IOException if the log cannot be read or is corrupt.
+     */
+    public long run() throws IOException { // O(actions)
+        long from = position;
+        while (next()) {
+            // keep stepping
+        }
+        return position - from;
+    }
+
+    /**
+     * Moves the playback to just after a given number of actions, or to the end of the log if it is shorter.
+     * @param action the number of actions to have applied.
+     * @throws IOException if the log cannot be read or is corrupt.
+     */
+    public void seek(long action) throws IOException { // O(height * width + actions since the keyframe)
+        int k = keyframes - 1;
+        while (k >= 0 && keyActions[k] > action) {
+            k--;
+        }
+        long from = k >= 0 ? keyActions[k] : 0;
+        if (action < position || from > position) {
+            if (k >= 0) {
+                restore(k);
+            } else {
+                restart();
+            }
+        }
+        while (position < action && next()) {
+            // keep stepping
+        }
+    }
+
+    /**
+     * Closes the log.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Starts the playback over from the first action.
+     */
+    private void restart() {
+        engine = new Engine(height, width, new CountingRandom(seed));
+        position = 0;
+        runLeft = 0;
+        ended = false;
+        moveTo(dataStart);
+    }
+
+    /**
+     * Restores a keyframe and positions the playback after it.
+     * @param k the index of the keyframe.
+     * @throws IOException if the log cannot be read or is corrupt.
+     */
+    private void restore(int k) throws IOException { // O(height * width)
+        moveTo(keyOffsets[k]);
+        if (readVarint() != ReplayRecorder.KEYFRAME || readVarint() != keyActions[k]) {
+            throw new IOException("Corrupt replay log: no keyframe at offset " + keyOffsets[k]);
+        }
+        CountingRandom rand = new CountingRandom(seed, readVarint());
+        long ticks = readVarint();
+        long pieces = readVarint();
+        long rowsCleared = readVarint();
+        int y = (int) unzigzag(readVarint());
+        int x = (int) unzigzag(readVarint());
+        int size = (int) readVarint();
+        Block block = new Block(y, x, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int color = readByte();
+                if (color != 0) {
+                    block.setTile(i, j, Tile.of((byte) color));
+                }
+            }
+        }
+        Board board = new Board(height, width);
+        for (int row = 0; row < height; row++) {
+            if (readVarint() != 0) {
+                for (int col = 0; col < width; col++) {
+                    int color = readByte();
+                    if (color != 0) {
+                        board.setTile(row, col, Tile.of((byte) color));
+                    }
+                }
+            }
+        }
+        engine = new Engine(board, block, rand, ticks, pieces, rowsCleared);
+        position = keyActions[k];
+        runLeft = 0;
+        ended = false;
+    }
+
+    /**
+     * Reads past the rest of a keyframe whose action count has been read.
+     * @throws IOException if the log cannot be read.
+     */
+    private void skipKeyframe() throws IOException { // O(height * width)
+        for (int i = 0; i < 6; i++) {
+            readVarint();
+        }
+        long size = readVarint();
+        skip(size * size);
+        for (int row = 0; row < height; row++) {
+            if (readVarint() != 0) {
+                skip(width);
+            }
+        }
+    }
+
+    /**
+     * Reads the keyframe index at the end of the log, if the log has one.
+     * @throws IOException if the file cannot be read.
+     */
+    private void readIndex() throws IOException {
+        long size = channel.size();
+        if (size < dataStart + 12) {
+            return;
+        }
+        moveTo(size - 12);
+        long indexOffset = readLong();
+        if (readInt() != ReplayRecorder.INDEX_MAGIC || indexOffset < dataStart || indexOffset >= size - 12) {
+            return;
+        }
+        moveTo(indexOffset);
+        if (readVarint() != ReplayRecorder.END) {
+            return;
+        }
+        long count = readVarint();
+        for (long i = 0; i < count; i++) {
+            long actions = readVarint();
+            addKeyframe(actions, readVarint());
+        }
+    }
+
+    /**
+     * Adds a keyframe to the known ones.
+     * @param actions the number of actions before the keyframe.
+     * @param offset the file offset of the keyframe.
+     */
+    private void addKeyframe(long actions, long offset) {
+        if (keyframes == keyActions.length) {
+            keyActions = Arrays.copyOf(keyActions, 2 * keyframes);
+            keyOffsets = Arrays.copyOf(keyOffsets, 2 * keyframes);
+        }
+        keyActions[keyframes] = actions;
+        keyOffsets[keyframes] = offset;
+        keyframes++;
+    }
+
+    /**
+     * Maps a zigzag-encoded value back to the signed value.
+     * @param value the zigzag encoding.
+     * @return the signed value.
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Gets the file offset of the next byte to read.
+     * @return the offset.
+     */
+    private long offset() {
+        return bufferStart + buffer.position();
+    }
+
+    /**
+     * Moves reading to a file offset.
+     * @param offset the offset of the next byte to read.
+     */
+    private void moveTo(long offset) {
+        bufferStart = offset;
+        buffer.clear();
+        buffer.limit(0);
+    }
+
+    /**
+     * Makes sure at least one byte is buffered.
+     * @return true if a byte is available, false at the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private boolean fill() throws IOException {
+        if (buffer.hasRemaining()) {
+            return true;
+        }
+        bufferStart += buffer.limit();
+        buffer.clear();
+        int read = channel.read(buffer, bufferStart);
+        buffer.flip();
+        return read > 0;
+    }
+
+    /**
+     * Reads one byte.
+     * @return the byte, from 0 to 255.
+     * @throws IOException if the file cannot be read or ends.
+     */
+    private int readByte() throws IOException {
+        if (!fill()) {
+            throw new EOFException("Replay log ends early at offset " + offset());
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Skips bytes.
+     * @param bytes the number of bytes to skip.
+     * @throws IOException if the file cannot be read or ends.
+     */
+    private void skip(long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            readByte();
+        }
+    }
+
+    /**
+     * Reads a big-endian int.
+     * @return the value.
+     * @throws IOException if the file cannot be read or ends.
+     */
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    /**
+     * Reads a big-endian long.
+     * @return the value.
+     * @throws IOException if the file cannot be read or ends.
+     */
+    private long readLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     * @return the value.
+     * @throws IOException if the file cannot be read, ends, or holds a varint longer than ten bytes.
+     */
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt replay log: varint too long at offset " + offset());
+    }
+
+    /**
+     * Replays a log at full speed and prints the final state of the game.
+     * @param args the log file, and optionally the number of actions to seek to first.
+     * @throws IOException if the log cannot be read or is corrupt.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 1 && args.length != 2)
+        {
+            System.err.println("Usage: java Replayer <log> [seekTo]");
+            return;
+        }
+        try (Replayer replayer = new Replayer(Paths.get(args[0])))
+        {
+            if (args.length == 2)
+            {
+                long start = System.nanoTime();
+                replayer.seek(Long.parseLong(args[1]));
+                System.out.printf("seek to %d in %.2f ms: pieces=%d rowsCleared=%d%n", replayer.getPosition(),
+                    (System.nanoTime() - start) / 1e6, replayer.getEngine().getPieces(), replayer.getEngine().getRowsCleared());
+            }
+            long start = System.nanoTime();
+            long actions = replayer.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Engine engine = replayer.getEngine();
+            System.out.printf("replayed %d actions in %.2f ms (%.0f actions/s): actions=%d ticks=%d pieces=%d rowsCleared=%d over=%b%n",
+                actions, seconds * 1e3, actions / seconds, replayer.getPosition(), engine.getTicks(), engine.getPieces(),
+                engine.getRowsCleared(), engine.isGameOver());
+        }
+    }
+}
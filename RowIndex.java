@@ -0,0 +1,216 @@
+/**
+ * Keeps the number of tiles in every row of a board and answers
+ * "which row is the fullest / emptiest / highest" without rescanning the board.
+ * Counts sit in the leaves of two tournament trees; each internal node holds the
+ * winning row of its subtree, so a query reads the root and an update walks one path.
+ */
+public class RowIndex
+{
+    /**
+     * Number of leaves in each tree, the smallest power of two that holds every row.
+     */
+    private int leaves;
+    /**
+     * Number of real rows; leaves past this are padding.
+     */
+    private int height;
+    /**
+     * Tile count of every row, indexed by row.
+     */
+    private int[] counts;
+    /**
+     * Tree whose nodes hold the row with the most tiles in their subtree, ties going to the lower row.
+     */
+    private int[] fullest;
+    /**
+     * Tree whose nodes hold the non-empty row with the fewest tiles in their subtree, ties going to the lower row.
+     */
+    private int[] emptiest;
+
+    /**
+     * Constructs an index for a board whose rows all start out empty.
+     * @param height the number of rows.
+     */
+    public RowIndex(int height) { // O(height)
+        this.height = height;
+        leaves = 1;
+        while (leaves < height) {
+            leaves <<= 1;
+        }
+        counts = new int[leaves];
+        fullest = new int[2 * leaves];
+        emptiest = new int[2 * leaves];
+        for (int i = 0; i < leaves; i++) {
+            fullest[leaves + i] = i < height ? i : -1;
+            emptiest[leaves + i] = -1;
+        }
+        refresh(0, leaves - 1);
+    }
+
+    /**
+     * Constructs an index with the same counts as another one.
+     * @param source the index to copy.
+     */
+    private RowIndex(RowIndex source) { // O(height)
+        leaves = source.leaves;
+        height = source.height;
+        counts = source.counts.clone();
+        fullest = source.fullest.clone();
+        emptiest = source.emptiest.clone();
+    }
+
+    /**
+     * Copies the index.
+     * @return an independent index with the same counts.
+     */
+    public RowIndex copy() { // O(height)
+        return new RowIndex(this);
+    }
+
+    /**
+     * Gets the tile count of a row.
+     * @param row the row index.
+     * @return the number of tiles in the row.
+     */
+    public int get(int row) { // O(1)
+        return counts[row];
+    }
+
+    /**
+     * Sets the tile count of a row and updates the trees.
+     * @param row the row index.
+     * @param count the number of tiles in the row.
+     */
+    public void set(int row, int count) { // O(log height)
+        put(row, count);
+        refresh(row, row);
+    }
+
+    /**
+     * Adds to the tile count of a row and updates the trees.
+     * @param row the row index.
+     * @param delta the change in the number of tiles.
+     */
+    public void add(int row, int delta) { // O(log height)
+        set(row, counts[row] + delta);
+    }
+
+    /**
+     * Sets the tile count of a row without updating the trees.
+     * Used when many rows change at once; call refresh() on the changed range afterwards.
+     * @param row the row index.
+     * @param count the number of tiles in the row.
+     */
+    public void put(int row, int count) { // O(1)
+        counts[row] = count;
+        emptiest[leaves + row] = count > 0 ? row : -1;
+    }
+
+    /**
+     * Recomputes the tree nodes above a range of rows changed with put().
+     * @param from the first changed row.
+     * @param to the last changed row, inclusive.
+     */
+    public void refresh(int from, int to) { // O(to - from + log height)
+        int lo = (leaves + from) >> 1;
+        int hi = (leaves + to) >> 1;
+        while (lo >= 1) {
+            for (int node = lo; node <= hi; node++) {
+                fullest[node] = fuller(fullest[2 * node], fullest[2 * node + 1]);
+                emptiest[node] = emptier(emptiest[2 * node], emptiest[2 * node + 1]);
+            }
+            lo >>= 1;
+            hi >>= 1;
+        }
+    }
+
+    /**
+     * Finds the row with the most tiles; in case of a tie the lowest row wins.
+     * @return the row index, or -1 if there are no rows.
+     */
+    public int fullest() { // O(1)
+        return height == 0 ? -1 : fullest[1];
+    }
+
+    /**
+     * Finds the non-empty row with the fewest tiles; in case of a tie the lowest row wins.
+     * @return the row index, or -1 if every row is empty.
+     */
+    public int emptiest() { // O(1)
+        return emptiest[1];
+    }
+
+    /**
+     * Finds the highest row holding at least one tile.
+     * @return the row index, or -1 if every row is empty.
+     */
+    public int highest() { // O(log height)
+        if (emptiest[1] == -1) {
+            return -1;
+        }
+        int node = 1;
+        while (node < leaves) {
+            node = emptiest[2 * node] != -1 ? 2 * node : 2 * node + 1;
+        }
+        return node - leaves;
+    }
+
+    /**
+     * Finds the first row at or below a row that holds at least one tile.
+     * The emptiest tree doubles as an occupancy summary: a node is -1 exactly when its subtree has no tiles,
+     * so whole runs of empty rows are skipped a subtree at a time.
+     * @param row the row to start from.
+     * @return the row index, or the number of rows if there is none.
+     */
+    public int nextNonEmpty(int row) { // O(log height)
+        if (row >= height) {
+            return height;
+        }
+        int node = leaves + row;
+        while (emptiest[node] == -1) {
+            while ((node & 1) == 1) {
+                node >>= 1;
+            }
+            if (node == 0) {
+                return height;
+            }
+            node++;
+        }
+        while (node < leaves) {
+            node = emptiest[2 * node] != -1 ? 2 * node : 2 * node + 1;
+        }
+        return node - leaves;
+    }
+
+    /**
+     * Picks the fuller of two rows;the right-hand row is the lower one and wins ties.
+     * @param a the upper candidate row, or -1.
+     * @param b the lower candidate row, or -1.
+     * @return the winning row, or -1 if neither is a candidate.
+     */
+    private int fuller(int a, int b) {
+        if (a == -1) {
+            return b;
+        }
+        if (b == -1) {
+            return a;
+        }
+        return counts[b] >= counts[a] ? b : a;
+    }
+
+    /**
+     * Picks the emptier of two non-empty rows; the right-hand row is the lower one and wins ties.
+     * @param a the upper candidate row, or -1.
+     * @param b the lower candidate row, or -1.
+     * @return the winning row, or -1 if neither is a candidate.
+     */
+    private int emptier(int a, int b) {
+        if (a == -1) {
+            return b;
+        }
+        if (b == -1) {
+            return a;
+        }
+        return counts[b] <= counts[a] ? b : a;
+    }
+}
@@ -0,0 +1,71 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Word-at-a-time scans over board rows.
+ * Occupancy rows are bitsets, so a row is counted 64 cells per popcount;
+ * color rows are read 8 cells per long and tested with SWAR (SIMD within a register) arithmetic,
+ * which needs no incubator module and runs the same on every JVM.
+ */
+public class RowScan {
+
+    /**
+     * Reads 8 colors at a time from a byte array, the first color in the lowest byte.
+     */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    /**
+     * The low 7 bits of every byte.
+     */
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    /**
+     * The high bit of every byte.
+     */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    /**
+     * Multiplier that gathers bit 0 of every byte into the top byte, byte k landing on bit 56 + k.
+     */
+    private static final long GATHER = 0x0102040810204080L;
+
+    /**
+     * Counts the tiles in an occupancy row.
+     * @param bits the row bitset.
+     * @return the number of set bits.
+     */
+    public static int count(long[] bits) { // O(width / 64)
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Sets the occupancy bit of every cell whose color is not 0, and counts those cells.
+     * Eight colors are tested per step: a byte is non-zero exactly when adding 0x7F to its low 7 bits,
+     * or its own high bit, sets its high bit; the eight high bits are then gathered into one byte of the bitset.
+     * @param colors the colors of the row.
+     * @param width the number of cells in the row.
+     * @param bits receives the row bitset; bits for non-zero colors are set, no bit is cleared.
+     * @return the number of cells whose color is not 0.
+     */
+    public static int occupancy(byte[] colors, int width, long[] bits) { // O(width / 8)
+        int count = 0;
+        int x = 0;
+        for (; x + 8 <= width; x += 8) {
+            long v = (long) LONGS.get(colors, x);
+            long nonZero = (((v & LOW_BITS) + LOW_BITS) | v) & HIGH_BITS;
+            if (nonZero != 0) {
+                count += Long.bitCount(nonZero);
+                bits[x >>> 6] |= (((nonZero >>> 7) * GATHER) >>> 56) << (x & 63);
+            }
+        }
+        for (; x < width; x++) {
+            if (colors[x] != 0) {
+                bits[x >>> 6] |= 1L << x;
+                count++;
+            }
+        }
+        return count;
+    }
+}
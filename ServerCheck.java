@@ -0,0 +1,127 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * Checks that a GameServer keeps a connection whose client sends actions before its first OPEN.
+ * A local server is started, a client sends an action and waits out a few ticks, during which it must receive nothing,
+ * then it starts a game and must receive a state record that counts the early action, followed by more states
+ * as it keeps playing.
+ */
+public class ServerCheck
+{
+    /**
+     * Ticks per second of the local server.
+     */
+    private static final int TICK_RATE = 1000;
+    /**
+     * How long the client waits after its early action, in milliseconds; many ticks at TICK_RATE.
+     */
+    private static final int WAIT = 200;
+    /**
+     * How long the client waits for a state record before failing, in milliseconds.
+     */
+    private static final int TIMEOUT = 5000;
+    /**
+     * The height of the board the client asks for.
+     */
+    private static final int HEIGHT = 20;
+    /**
+     * The width of the board the client asks for.
+     */
+    private static final int WIDTH = 10;
+
+    /**
+     * Runs the check and exits with status 1 if the server sent something early, closed the connection or sent no state.
+     * @param args unused.
+     * @throws IOException if the server cannot be started.
+     * @throws InterruptedException if the check is interrupted while waiting.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        String failure;
+        try (GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", 0), 1, TICK_RATE, 500)) {
+            server.start();
+            try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+                socket.setSoTimeout(TIMEOUT);
+                failure = check(socket);
+            }
+        }
+        System.out.println(failure == null ? "OK" : failure);
+        if (failure != null) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays the check over a connection.
+     * @param socket the connection to the server.
+     * @return null if the server behaved, or what went wrong.
+     * @throws IOException if the connection fails other than by being closed or timing out.
+     * @throws InterruptedException if the check is interrupted while waiting.
+     */
+    private static String check(Socket socket) throws IOException, InterruptedException { // O(WAIT + TIMEOUT)
+        OutputStream out = socket.getOutputStream();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        out.write(Action.LEFT.ordinal());
+        out.flush();
+        Thread.sleep(WAIT);
+        if (in.available() > 0) {
+            return "a record was sent before OPEN";
+        }
+        ByteBuffer open = ByteBuffer.allocate(GameServer.OPEN_LENGTH);
+        open.put((byte) GameServer.OPEN).putShort((short) HEIGHT).putShort((short) WIDTH).putLong(1);
+        out.write(open.array());
+        out.flush();
+        try {
+            int applied = readState(in);
+            if (applied < 0) {
+                return "the connection was closed instead of sending a state";
+            }
+            if (applied != 1) {
+                return "the first state counts " + applied + " actions instead of 1";
+            }
+            out.write(Action.RIGHT.ordinal());
+            out.flush();
+            int next = readState(in);
+            while (next == 1) {
+                next = readState(in);
+            }
+            if (next != 2) {
+                return next < 0 ? "the connection was closed after the first state" : "a state counts " + next + " actions instead of 2";
+            }
+        } catch (SocketTimeoutException e) {
+            return "no state arrived within " + TIMEOUT + " ms";
+        }
+        return null;
+    }
+
+    /**
+     * Reads one state record and skips its block and rows.
+     * @param in the connection.
+     * @return the number of actions the record counts, or -1 if the connection was closed.
+     * @throws IOException if the connection fails other than by being closed, or the record is not a state.
+     */
+    private static int readState(DataInputStream in) throws IOException { // O(record_length)
+        int code = in.read();
+        if (code < 0) {
+            return -1;
+        }
+        if (code != GameServer.STATE) {
+            throw new IOException("Not a state record: " + code);
+        }
+        int applied = in.readInt();
+        in.readByte();
+        in.readShort();
+        in.readShort();
+        int size = in.readShort();
+        in.skipNBytes(size * size);
+        int rows = in.readInt();
+        in.skipNBytes(rows * (4L + WIDTH));
+        return applied;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * An immutable picture of a game at one moment, safe to read from any thread.
+ * The board is held as a Board snapshot, which shares its rows with the live board,
+ * so taking a snapshot costs O(height) plus the size of the block.
+ */
+public final class Snapshot
+{
+    /**
+     * Copy-on-write snapshot of the board; it is never written.
+     */
+    private final Board board;
+    /**
+     * The top-left y-coordinate of the block.
+     */
+    private final int blockY;
+    /**
+     * The top-left x-coordinate of the block.
+     */
+    private final int blockX;
+    /**
+     * The length of the side of the block.
+     */
+    private final int blockSize;
+    /**
+     * The color of every block cell, row-major; 0 marks an empty cell.
+     */
+    private final byte[] blockColors;
+    /**
+     * Whether the game had ended.
+     */
+    private final boolean over;
+
+    /**
+     * Takes a snapshot of a game.
+     * Must be called by the thread that drives the game.
+     * @param engine the game.
+     */
+    public Snapshot(Engine engine) { // O(height + block_size)
+        board = engine.getBoard().snapshot();
+
+        Block block = engine.getBlock();
+        blockY = block.getY();
+        blockX = block.getX();
+        blockSize = block.getSize();
+        blockColors = new byte[blockSize * blockSize];
+        for (int i = 0; i < blockSize; i++) {
+            for (int j = 0; j < blockSize; j++) {
+                Tile tile = block.getTile(i, j);
+                blockColors[i * blockSize + j] = tile == null ? 0 : tile.getColor();
+            }
+        }
+        over = engine.isGameOver();
+    }
+
+    /**
+     * Gets the height of the board.
+     * @return the height of the board.
+     */
+    public int getHeight() { // O(1)
+        return board.getHeight();
+    }
+
+    /**
+     * Gets the width of the board.
+     * @return the width of the board.
+     */
+    public int getWidth() { // O(1)
+        return board.getWidth();
+    }
+
+    /**
+     * Gets the color of a board cell.
+     * @param jellyTime the y-coordinate of the cell.
+     * @param peanutButter the x-coordinate of the cell.
+     * @return the color, or 0 if the cell is empty.
+     */
+    public byte getColor(int jellyTime, int peanutButter) { // O(1)
+        Tile tile = board.getTile(jellyTime, peanutButter);
+        return tile == null ? 0 : tile.getColor();
+    }
+
+    /**
+     * Gets the board's version stamp when the snapshot was taken.
+     * @return the stamp.
+     */
+    public long getVersion() { // O(1)
+        return board.getVersion();
+    }
+
+    /**
+     * Gets the board's version stamp of a row when the snapshot was taken.
+     * @param jellyTime the y-coordinate of the row.
+     * @return the stamp.
+     */
+    public long getRowVersion(int jellyTime) { // O(1)
+        return board.getRowVersion(jellyTime);
+    }
+
+    /**
+     * Gets the top-left y-coordinate of the block.
+     * @return the y-coordinate.
+     */
+    public int getBlockY() { // O(1)
+        return blockY;
+    }
+
+    /**
+     * Gets the top-left x-coordinate of the block.
+     * @return the x-coordinate.
+     */
+    public int getBlockX() { // O(1)
+        return blockX;
+    }
+
+    /**
+     * Gets the length of the side of the block.
+     * @return the block size.
+     */
+    public int getBlockSize() { // O(1)
+        return blockSize;
+    }
+
+    /**
+     * Gets the color of a block cell.
+     * @param jellyTime the y-coordinate of the cell within the block.
+     * @param peanutButter the x-coordinate of the cell within the block.
+     * @return the color, or 0 if the cell is empty.
+     */
+    public byte getBlockColor(int jellyTime, int peanutButter) { // O(1)
+        return blockColors[jellyTime * blockSize + peanutButter];
+    }
+
+    /**
+     * Checks if the game had ended.
+     * @return true if the game was over, false otherwise.
+     */
+    public boolean isGameOver() { // O(1)
+        return over;
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+/**
+ * A color plane held on the heap that only allocates the rows that hold a color.
+ * A row is null until a cell of it is set, and goes back to null when it is cleared,
+ * so a tall board that is mostly empty costs one reference per row plus the rows in use.
+ */
+public class SparseColorPlane implements ColorPlane
+{
+    /**
+     * The colors of every row, or null for a row whose cells are all color 0.
+     */
+    private byte[][] rows;
+    /**
+     * Number of columns.
+     */
+    private int width;
+
+    /**
+     * Constructs a plane whose cells are all color 0, without allocating any row.
+     * @param height the number of rows.
+     * @param width the number of columns.
+     */
+    public SparseColorPlane(int height, int width) { // O(height)
+        this(new byte[height][], width);
+    }
+
+    /**
+     * Constructs a plane over existing rows, which the plane takes over.
+     * @param rows the colors of every row, or null for all-0 rows.
+     * @param width the number of columns.
+     */
+    private SparseColorPlane(byte[][] rows, int width) { // O(1)
+        this.rows = rows;
+        this.width = width;
+    }
+
+    /**
+     * Gets the color of a cell.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return the color of the cell.
+     */
+    @Override
+    public byte get(int row, int col) { // O(1)
+        byte[] colors = rows[row];
+        return colors == null ? 0 : colors[col];
+    }
+
+    /**
+     * Sets the color of a cell, allocating its row if it has none.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @param color the new color.
+     */
+    @Override
+    public void set(int row, int col, byte color) { // O(1), plus O(width) to allocate the row
+        if (rows[row] == null) {
+            if (color == 0) {
+                return;
+            }
+            rows[row] = new byte[width];
+        }
+        rows[row][col] = color;
+    }
+
+    /**
+     * Copies the colors of a row into an array.
+     * @param row the row.
+     * @param dst receives the colors.
+     */
+    @Override
+    public void read(int row, byte[] dst) { // O(width)
+        if (rows[row] == null) {
+            Arrays.fill(dst, 0, width, (byte) 0);
+        } else {
+            System.arraycopy(rows[row], 0, dst, 0, width);
+        }
+    }
+
+    /**
+     * Exchanges two rows by reference.
+     * @param a the first row.
+     * @param b the second row.
+     */
+    @Override
+    public void swap(int a, int b) { // O(1)
+        byte[] temp = rows[a];
+        rows[a] = rows[b];
+        rows[b] = temp;
+    }
+
+    /**
+     * Drops a row, so that all of its cells read as color 0.
+     * @param row the row.
+     */
+    @Override
+    public void clear(int row) { // O(1)
+        rows[row] = null;
+    }
+
+    /**
+     * Copies the colors of one row over another.
+     * @param from the row to copy.
+     * @param to the row to overwrite.
+     */
+    @Override
+    public void copy(int from, int to) { // O(width)
+        if (rows[from] == null) {
+            rows[to] = null;
+        } else if (rows[to] == null) {
+            rows[to] = rows[from].clone();
+        } else {
+            System.arraycopy(rows[from], 0, rows[to], 0, width);
+        }
+    }
+
+    /**
+     * Replaces a row that may be shared with a private array; a row without colors stays without one.
+     * @param row the row.
+     * @param keep whether to copy the contents; if not, the row is dropped.
+     */
+    @Override
+    public void detach(int row, boolean keep) { // O(width)
+        rows[row] = keep && rows[row] != null ? rows[row].clone() : null;
+    }
+
+    /**
+     * Creates a plane that shares every row with this one.
+     * @return the new plane.
+     */
+    @Override
+    public ColorPlane share() { // O(height)
+        return new SparseColorPlane(rows.clone(), width);
+    }
+
+    /**
+     * Does nothing; a heap plane has no durable storage.
+     */
+    @Override
+    public void force() { // O(1)
+    }
+}
@@ -9,20 +9,8 @@ public class Tetris {
      * @param block the block to be moved.
      * @return true if the block can move left, false otherwise.
      */
-    public static boolean canMoveLeft(Board board, Block block) { // O(board_size)
-        int peanutButter = block.getX();
-        int jellyTime = block.getY();
-        int size = block.getSize();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (block.getTile(i, j) != null) {
-                    if (j + peanutButter == 0 || board.getTile(i + jellyTime, j + peanutButter - 1) != null) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
+    public static boolean canMoveLeft(Board board, Block block) { // O(block_size / 64)
+        return Collision.fits(board, block, Collision.NONE, block.getY(), block.getX() - 1);
     }
 
     /**
@@ -31,44 +19,59 @@ public class Tetris {
      * @param block the block to be moved.
      * @return true if the block can move right, false otherwise.
      */
-    public static boolean canMoveRight(Board board, Block block) { // O(board_size)
-        int peanutButter = block.getX();
-        int jellyTime = block.getY();
-        int size = block.getSize();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (block.getTile(i, j) != null) {
-                    if (j + peanutButter == board.getWidth() - 1 || board.getTile(i + jellyTime, j + peanutButter + 1) != null) {
-                        return false;
-                    }
-                }
+    public static boolean canMoveRight(Board board, Block block) { // O(block_size / 64)
+        return Collision.fits(board, block, Collision.NONE, block.getY(), block.getX() + 1);
+    }
+
+    /**
+     * Computes how many rows the block can fall before it lands, in a single step.
+     * Each column of the block lands with its skirt, its lowest tile, on the first board tile below the block's top row,
+     * which the board finds from its column heightmap; that holds unless a board tile sits between the block's top row
+     * and the skirt, in the gap of a shape like a U, in which case every run of tiles is checked instead.
+     * @param board the game board.
+     * @param block the falling block, which must fit where it is.
+     * @return the number of rows the block can fall, or 0 if it has no tiles.
+     */
+    public static int dropDistance(Board board, Block block) { // O(block_size) while the skirt is cached and the block is above the stack
+        int top = block.getY() + block.getTop();
+        int distance = Integer.MAX_VALUE;
+        for (int j = block.getLeft(); j <= block.getRight(); j++) {
+            int skirt = block.getSkirt(j);
+            if (skirt < 0) {
+                continue;
+            }
+            int below = board.nextTileDown(top, block.getX() + j);
+            if (below <= block.getY() + skirt) {
+                return runDropDistance(board, block);
             }
+            distance = Math.min(distance, below - 1 - block.getY() - skirt);
         }
-        return true;
+        return distance == Integer.MAX_VALUE ? 0 : distance;
     }
 
-
     /**
-     * A helper method which checks if the given block will hit the boundaries of the board.
-     * @param board of the tetris game.
-     * @param peanutButter coordinate of block.
-     * @param jellyTime coordinate of block.
-     * @param size of block.
-     * @param changedBlock what will be checked.
-     * @return result boolean which has true or false.
+     * Computes how many rows the block can fall before it lands, looking at every run of tiles in its columns.
+     * Every tile whose cell below is empty in the block is the bottom of a run of tiles in its column;
+     * the block lands when the first of those runs reaches a tile, which the board finds from its column heightmap.
+     * @param board the game board.
+     * @param block the falling block, which must fit where it is.
+     * @return the number of rows the block can fall, or 0 if it has no tiles.
      */
-    private static boolean checkBoundaries(Board board, int peanutButter, int jellyTime, int size, DynamicArray<DynamicArray<Tile>> changedBlock) {
-        boolean result = true;
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (changedBlock.get(i).get(j) != null) {
-                    if (i + jellyTime >= board.getHeight() || i + jellyTime < 0 || j + peanutButter >= board.getWidth() || j + peanutButter < 0 || board.getTile(i + jellyTime, j + peanutButter) != null) {
-                        result = false;
-                    }
+    private static int runDropDistance(Board board, Block block) { // O(occupied_rows * block_size / 64 + tiles) while the block is above the stack
+        long[][] masks = block.getRowMasks();
+        int distance = Integer.MAX_VALUE;
+        for (int i = block.getTop(); i <= block.getBottom(); i++) {
+            long[] row = masks[i];
+            for (int w = 0; w < row.length; w++) {
+                long bottoms = i + 1 < masks.length ? row[w] & ~masks[i + 1][w] : row[w];
+                for (; bottoms != 0; bottoms &= bottoms - 1) {
+                    int y = block.getY() + i;
+                    int x = block.getX() + (w << 6) + Long.numberOfTrailingZeros(bottoms);
+                    distance = Math.min(distance, board.nextTileDown(y + 1, x) - 1 - y);
                 }
             }
         }
-        return result;
+        return distance == Integer.MAX_VALUE ? 0 : distance;
     }
 
     /**
@@ -77,17 +80,8 @@ public class Tetris {
      * @param block the block to be flipped.
      * @return true if the block can be flipped vertically, false otherwise.
      */
-    public static boolean canflipVertical(Board board, Block block) { // O(board_size)
-        int size = block.getSize();
-        DynamicArray<DynamicArray<Tile>> flippedBlock = new DynamicArray<>(size);
-        for (int i = size - 1; i >= 0; i--) {
-            DynamicArray<Tile> newRow = new DynamicArray<>(size);
-            for (int j = 0; j < size; j++) {
-                newRow.set(j, block.getTile(i, j));
-            }
-            flippedBlock.set(size - i - 1, newRow);
-        }
-        return checkBoundaries(board, block.getX(), block.getY(), size, flippedBlock);
+    public static boolean canflipVertical(Board board, Block block) { // O(block_size)
+        return Collision.fits(board, block, Collision.FLIP_VERTICAL, block.getY(), block.getX());
     }
 
     /**
@@ -96,19 +90,8 @@ public class Tetris {
      * @param block the block to be flipped.
      * @return true if the block can be flipped horizontally, false otherwise.
      */
-    public static boolean canflipHorizontal(Board board, Block block) { // O(board_size)
-        int peanutButter = block.getX();
-        int jellyTime = block.getY();
-        int size = block.getSize();
-        DynamicArray<DynamicArray<Tile>> flippedBlock = new DynamicArray<>(size);
-        for (int i = 0; i < size; i++) {
-            DynamicArray<Tile> newRow = new DynamicArray<>(size);
-            for (int j = 0; j < size; j++) {
-                newRow.set(j, block.getTile(i, size - 1 - j));
-            }
-            flippedBlock.set(i, newRow);
-        }
-        return checkBoundaries(board, peanutButter, jellyTime, size, flippedBlock);
+    public static boolean canflipHorizontal(Board board, Block block) { // O(block_size)
+        return Collision.fits(board, block, Collision.FLIP_HORIZONTAL, block.getY(), block.getX());
     }
 
     /**
@@ -117,17 +100,8 @@ public class Tetris {
      * @param block the block to be rotated.
      * @return true if the block can be rotated, false otherwise.
      */
-    public static boolean canRotate(Board board, Block block) { // O(board_size)
-        int size = block.getSize();
-        DynamicArray<DynamicArray<Tile>> rotatedBlock = new DynamicArray<>(size);
-        for (int i = 0; i < size; i++) {
-            DynamicArray<Tile> newRow = new DynamicArray<>(size);
-            for (int j = 0; j < size; j++) {
-                newRow.set(j, block.getTile(size - 1 - j, i)); // Rotate 90 degrees clockwise
-            }
-            rotatedBlock.set(i, newRow);
-        }
-        return checkBoundaries(board, block.getX(), block.getY(), size, rotatedBlock);
+    public static boolean canRotate(Board board, Block block) { // O(block_size)
+        return Collision.fits(board, block, Collision.ROTATE, block.getY(), block.getX());
     }
 
     /**
@@ -136,20 +110,12 @@ public class Tetris {
      * @param block the block to be scaled down.
      * @return true if the block can be scaled down, false otherwise.
      */
-    public static boolean canScaleDown(Board board, Block block) { // O(board_size)
+    public static boolean canScaleDown(Board board, Block block) { // O(scaled_size^2 / 64)
         int size = block.getSize();
         if (size <= 2) {
             return false;
         }
-        int count = 0;
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (block.getTile(i, j) != null) {
-                    count++;
-                }
-            }
-        }
-        if(count <= 2) {
+        if (block.getTileCount() <= 2) {
             return false;
         }
 
@@ -161,10 +127,8 @@ public class Tetris {
         int maxX = Math.min(peanutButter + scaledSize - 1, board.getWidth() - 1);
         int maxY = Math.min(jellyTime + scaledSize - 1, board.getHeight() - 1);
         for (int i = minY; i <= maxY; i++) {
-            for (int j = minX; j <= maxX; j++) {
-                if (board.getTile(i, j) != null) {
-                    return false;
-                }
+            if (!board.isEmpty(i, minX, maxX)) {
+                return false;
             }
         }
         return true;
@@ -176,30 +140,25 @@ public class Tetris {
      * @param block the block to be scaled up.
      * @return true if the block can be scaled up, false otherwise.
      */
-    public static boolean canScaleUp(Board board, Block block) { // O(board_size)
+    public static boolean canScaleUp(Board board, Block block) { // O(block_size)
         int currentSize = block.getSize();
         int newSize = currentSize * 2;
         int peanutButter = block.getX();
         int jellyTime = block.getY();
         int newX = peanutButter + newSize - 1;
         int newY = jellyTime + newSize - 1;
-        if (newX >= board.getWidth() || newY >= board.getHeight()) {
+        if (peanutButter < 0 || jellyTime < 0 || newX >= board.getWidth() || newY >= board.getHeight()) {
             return false;
         }
-        for (int i = jellyTime; i <= newY; i++) {
-            for (int j = peanutButter; j <= newX; j++) {
-                if (j < peanutButter + currentSize && i < jellyTime + currentSize) {
-                    Tile tile = block.getTile(i - jellyTime, j - peanutButter);
-                    if (tile != null) {
-                        if (board.getTile(i, j) != null) {
-                            return false;
-                        }
-                    }
-                } else {
-                    if (board.getTile(i, j) != null) {
-                        return false;
-                    }
-                }
+        long[][] masks = block.getRowMasks();
+        for (int i = 0; i < currentSize; i++) {
+            if (!board.fitsRow(jellyTime + i, masks[i], peanutButter) || !board.isEmpty(jellyTime + i, peanutButter + currentSize, newX)) {
+                return false;
+            }
+        }
+        for (int i = jellyTime + currentSize; i <= newY; i++) {
+            if (!board.isEmpty(i, peanutButter, newX)) {
+                return false;
             }
         }
         return true;
@@ -211,20 +170,8 @@ public class Tetris {
      * @param block the block to be dropped.
      * @return true if the block can be dropped, false otherwise.
      */
-    public static boolean canDrop(Board board, Block block) { // O(board_size)
-        int peanutButter = block.getX();
-        int jellyTime = block.getY();
-        int size = block.getSize();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (block.getTile(i, j) != null) {
-                    if (i + jellyTime == board.getHeight() - 1 || board.getTile(i + jellyTime + 1, j + peanutButter) != null) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
+    public static boolean canDrop(Board board, Block block) { // O(block_size / 64)
+        return Collision.fits(board, block, Collision.NONE, block.getY() + 1, block.getX());
     }
 
     /**
@@ -233,19 +180,7 @@ public class Tetris {
      * @param block the current block.
      * @return true if the game is over, false otherwise.
      */
-    public static boolean isGameOver(Board board, Block block) { // O(board_size)
-        int peanutButter = block.getX();
-        int jellyTime = block.getY();
-        int size = block.getSize();
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (block.getTile(i, j) != null) {
-                    if (i + jellyTime < 0 || i + jellyTime >= board.getHeight() || j + peanutButter < 0 || j + peanutButter >= board.getWidth() || board.getTile(i + jellyTime, j + peanutButter) != null) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    public static boolean isGameOver(Board board, Block block) { // O(block_size / 64)
+        return !Collision.fits(board, block, Collision.NONE, block.getY(), block.getX());
     }
 }
\ No newline at end of file
@@ -1,15 +1,31 @@
 /**
  * A class representing a tile in the Tetris game board.
+ * Tiles are immutable, so one shared tile per color is enough; get them from of()
+ * and two tiles of the same color are then the same object.
  */
 public class Tile
 {
+    /**
+     * The shared tile of every possible color value, indexed by the unsigned color.
+     */
+    private static final Tile[] CACHE = new Tile[256];
+
+    static
+    {
+        for (int i = 0; i < CACHE.length; i++)
+        {
+            CACHE[i] = new Tile((byte) i);
+        }
+    }
+
     /**
      * Color that will be taken from Game class for the tile.
      */
-    private byte color;
+    private final byte color;
 
     /**
      * Constructs a tile with the specified color.
+     * Prefer of(), which returns a shared tile instead of allocating a new one.
      * @param color the color of the tile.
      */
     public Tile(byte color)
@@ -17,6 +33,16 @@ public class Tile
         this.color = color;
     }
 
+    /**
+     * Gets the shared tile of a color.
+     * @param color the color of the tile.
+     * @return the tile of that color; every call with the same color returns the same object.
+     */
+    public static Tile of(byte color)
+    {
+        return CACHE[color & 0xFF];
+    }
+
     /**
      * Gets the color of the tile.
      * @return the color of the tile.
@@ -0,0 +1,72 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the Block transforms that build a new block.
+ * Rotating and flipping only change the orientation, so they are measured together with their checks in TetrisBench.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BlockBench
+{
+    /**
+     * The size of the block that is scaled up; the block that is scaled down is twice as big.
+     */
+    @Param({"3", "12", "48"})
+    public int size;
+
+    /**
+     * The block that is scaled up.
+     */
+    private Object block;
+    /**
+     * The block that is scaled down.
+     */
+    private Object big;
+
+    /**
+     * Builds the blocks.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Setup
+    public void setup() throws Throwable {
+        block = Handles.block(0, 0, size, size);
+        big = Handles.block(0, 0, size * 2, size);
+    }
+
+    /**
+     * Block.scaleUp.
+     * @return the scaled block.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object scaleUp() throws Throwable {
+        return Handles.SCALE_UP.invokeExact(block);
+    }
+
+    /**
+     * Block.scaleDown.
+     * @return the scaled block.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object scaleDown() throws Throwable {
+        return Handles.SCALE_DOWN.invokeExact(big);
+    }
+}
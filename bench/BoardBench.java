@@ -0,0 +1,189 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the Board operations that run when a block locks or is scaled.
+ * The operations that change a board run on a board that is rewritten cell by cell before every call,
+ * so every call sees the same state; the rewrite is not timed, and allocates nothing, so -prof gc counts only the call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BoardBench
+{
+    /**
+     * The board dimensions, as HEIGHTxWIDTH.
+     */
+    @Param({"20x10", "200x256", "2000x1024"})
+    public String board;
+
+    /**
+     * The height of the board.
+     */
+    private int height;
+    /**
+     * The width of the board.
+     */
+    private int width;
+    /**
+     * The block consolidated into the board.
+     */
+    private Object block;
+    /**
+     * A board that is only ever changed in its bottom row, for snapshot().
+     */
+    private Object live;
+    /**
+     * The tile written before each snapshot.
+     */
+    private Object tile;
+    /**
+     * The column written before the next snapshot.
+     */
+    private int column;
+
+    /**
+     * A board restored to the same tiles before every call.
+     */
+    @State(Scope.Thread)
+    public static class Fresh
+    {
+        /**
+         * The tile of every cell, or null for an empty cell.
+         */
+        private Object[][] tiles;
+        /**
+         * The board.
+         */
+        Object board;
+
+        /**
+         * Lays out the tiles and builds the board.
+         * @param bench the benchmark, for the dimensions.
+         * @throws Throwable if the game classes cannot be called.
+         */
+        @Setup
+        public void build(BoardBench bench) throws Throwable {
+            tiles = Handles.layout(bench.height, bench.width);
+            board = Handles.NEW_BOARD.invokeExact(bench.height, bench.width);
+        }
+
+        /**
+         * Restores the tiles.
+         * @throws Throwable if the game classes cannot be called.
+         */
+        @Setup(Level.Invocation)
+        public void restore() throws Throwable {
+            Handles.fill(board, tiles);
+        }
+    }
+
+    /**
+     * Builds the block and the board for snapshot().
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Setup
+    public void setup() throws Throwable {
+        int[] dims = Handles.dims(board);
+        height = dims[0];
+        width = dims[1];
+        block = Handles.block(0, width / 2 - 1, 3, 7);
+        live = Handles.board(height, width);
+        tile = Handles.TILE_OF.invokeExact((byte) 1);
+    }
+
+    /**
+     * Board.consolidate on the restored board.
+     * @param fresh the board.
+     * @return the board.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object consolidate(Fresh fresh) throws Throwable {
+        Handles.CONSOLIDATE.invokeExact(fresh.board, block);
+        return fresh.board;
+    }
+
+    /**
+     * Board.clearRows on the restored board.
+     * @param fresh the board.
+     * @return the number of rows cleared.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public int clearRows(Fresh fresh) throws Throwable {
+        return (int) Handles.CLEAR_ROWS.invokeExact(fresh.board);
+    }
+
+    /**
+     * Board.reward on the restored board.
+     * @param fresh the board.
+     * @return the board.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object reward(Fresh fresh) throws Throwable {
+        Handles.REWARD.invokeExact(fresh.board);
+        return fresh.board;
+    }
+
+    /**
+     * Board.penalize on the restored board.
+     * @param fresh the board.
+     * @return the board.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object penalize(Fresh fresh) throws Throwable {
+        Handles.PENALIZE.invokeExact(fresh.board);
+        return fresh.board;
+    }
+
+    /**
+     * new Board.
+     * @return the board.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object newBoard() throws Throwable {
+        return Handles.NEW_BOARD.invokeExact(height, width);
+    }
+
+    /**
+     * Board.sparse.
+     * @return the board.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object sparse() throws Throwable {
+        return Handles.SPARSE_BOARD.invokeExact(height, width);
+    }
+
+    /**
+     * Board.snapshot after one write, so every snapshot has a changed row to take over from the live board.
+     * @return the snapshot.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object snapshot() throws Throwable {
+        column = column + 1 == width ? 0 : column + 1;
+        Handles.SET_TILE.invokeExact(live, height - 1, column, tile);
+        return Handles.SNAPSHOT.invokeExact(live);
+    }
+}
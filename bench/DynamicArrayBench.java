@@ -0,0 +1,78 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks DynamicArray.get and DynamicArray.set, walking the array one index per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class DynamicArrayBench
+{
+    /**
+     * The size of the array.
+     */
+    @Param({"10", "256", "1024"})
+    public int size;
+
+    /**
+     * The array.
+     */
+    private Object array;
+    /**
+     * The tile stored by set().
+     */
+    private Object tile;
+    /**
+     * The index of the next call.
+     */
+    private int index;
+
+    /**
+     * Builds the array.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Setup
+    public void setup() throws Throwable {
+        array = Handles.NEW_DYNAMIC_ARRAY.invokeExact(size);
+        tile = Handles.TILE_OF.invokeExact((byte) 1);
+    }
+
+    /**
+     * DynamicArray.get.
+     * @return the element.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object get() throws Throwable {
+        index = index + 1 == size ? 0 : index + 1;
+        return Handles.ARRAY_GET.invokeExact(array, index);
+    }
+
+    /**
+     * DynamicArray.set.
+     * @return the array.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public Object set() throws Throwable {
+        index = index + 1 == size ? 0 : index + 1;
+        Handles.ARRAY_SET.invokeExact(array, index, tile);
+        return array;
+    }
+}
@@ -0,0 +1,248 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Method handles onto the game classes, for the JMH benchmarks.
+ * JMH refuses benchmark classes in the default package, where every game class lives,
+ * and a class in a named package cannot name a class in the default package,
+ * so the benchmarks call the game through these handles instead.
+ * Every handle is a static final field, which the JIT treats as a constant and inlines like a direct call;
+ * game classes appear as Object in the handle types.
+ */
+final class Handles
+{
+    /**
+     * new Board(int height, int width).
+     */
+    static final MethodHandle NEW_BOARD = constructor("Board", int.class, int.class);
+    /**
+     * Board.sparse(int height, int width).
+     */
+    static final MethodHandle SPARSE_BOARD = method("Board", "sparse", true, "Board", int.class, int.class);
+    /**
+     * Board.setTile(int y, int x, Tile t).
+     */
+    static final MethodHandle SET_TILE = method("Board", "setTile", false, void.class, int.class, int.class, "Tile");
+    /**
+     * Board.consolidate(Block block).
+     */
+    static final MethodHandle CONSOLIDATE = method("Board", "consolidate", false, void.class, "Block");
+    /**
+     * Board.clearRows().
+     */
+    static final MethodHandle CLEAR_ROWS = method("Board", "clearRows", false, int.class);
+    /**
+     * Board.reward().
+     */
+    static final MethodHandle REWARD = method("Board", "reward", false, void.class);
+    /**
+     * Board.penalize().
+     */
+    static final MethodHandle PENALIZE = method("Board", "penalize", false, void.class);
+    /**
+     * Board.snapshot().
+     */
+    static final MethodHandle SNAPSHOT = method("Board", "snapshot", false, "Board");
+    /**
+     * Tile.of(byte color).
+     */
+    static final MethodHandle TILE_OF = method("Tile", "of", true, "Tile", byte.class);
+    /**
+     * new Block(int y, int x, int size, byte color, RandomGenerator rand).
+     */
+    static final MethodHandle NEW_BLOCK = constructor("Block", int.class, int.class, int.class, byte.class, RandomGenerator.class);
+    /**
+     * Block.rotate().
+     */
+    static final MethodHandle ROTATE = method("Block", "rotate", false, void.class);
+    /**
+     * Block.scaleUp().
+     */
+    static final MethodHandle SCALE_UP = method("Block", "scaleUp", false, "Block");
+    /**
+     * Block.scaleDown().
+     */
+    static final MethodHandle SCALE_DOWN = method("Block", "scaleDown", false, "Block");
+    /**
+     * Tetris.canDrop(Board board, Block block).
+     */
+    static final MethodHandle CAN_DROP = method("Tetris", "canDrop", true, boolean.class, "Board", "Block");
+    /**
+     * Tetris.canRotate(Board board, Block block).
+     */
+    static final MethodHandle CAN_ROTATE = method("Tetris", "canRotate", true, boolean.class, "Board", "Block");
+    /**
+     * Tetris.canScaleUp(Board board, Block block).
+     */
+    static final MethodHandle CAN_SCALE_UP = method("Tetris", "canScaleUp", true, boolean.class, "Board", "Block");
+    /**
+     * Tetris.dropDistance(Board board, Block block).
+     */
+    static final MethodHandle DROP_DISTANCE = method("Tetris", "dropDistance", true, int.class, "Board", "Block");
+    /**
+     * new DynamicArray(int size).
+     */
+    static final MethodHandle NEW_DYNAMIC_ARRAY = constructor("DynamicArray", int.class);
+    /**
+     * DynamicArray.get(int index).
+     */
+    static final MethodHandle ARRAY_GET = method("DynamicArray", "get", false, Object.class, int.class);
+    /**
+     * DynamicArray.set(int index, Object obj).
+     */
+    static final MethodHandle ARRAY_SET = method("DynamicArray", "set", false, void.class, int.class, Object.class);
+    /**
+     * RowScan.occupancy(byte[] colors, int width, long[] bits).
+     */
+    static final MethodHandle OCCUPANCY = method("RowScan", "occupancy", true, int.class, byte[].class, int.class, long[].class);
+
+    /**
+     * All members are static.
+     */
+    private Handles() {
+    }
+
+    /**
+     * Builds a board whose top third is empty and whose other rows are about 70% full,
+     * with every seventh of those rows complete; the same dimensions always give the same board.
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @return the board.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    static Object board(int height, int width) throws Throwable {
+        Object board = NEW_BOARD.invokeExact(height, width);
+        fill(board, layout(height, width));
+        return board;
+    }
+
+    /**
+     * Lays out the tiles of the board built by board().
+     * @param height the height of the board.
+     * @param width the width of the board.
+     * @return the tile of every cell, or null for an empty cell.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    static Object[][] layout(int height, int width) throws Throwable {
+        Object[][] tiles = new Object[height][width];
+        SplittableRandom rand = new SplittableRandom(1);
+        for (int y = height / 3; y < height; y++) {
+            boolean full = y % 7 == 0;
+            for (int x = 0; x < width; x++) {
+                if (full || rand.nextInt(10) < 7) {
+                    tiles[y][x] = TILE_OF.invokeExact((byte) (1 + rand.nextInt(9)));
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Writes every cell of a board; the tiles are shared, so this allocates nothing once the rows are the board's own.
+     * @param board the board.
+     * @param tiles the tile of every cell, or null for an empty cell.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    static void fill(Object board, Object[][] tiles) throws Throwable {
+        for (int y = 0; y < tiles.length; y++) {
+            for (int x = 0; x < tiles[y].length; x++) {
+                SET_TILE.invokeExact(board, y, x, tiles[y][x]);
+            }
+        }
+    }
+
+    /**
+     * Builds a block whose cells each hold a tile with probability 1/2.
+     * @param jellyTime the top-left y-coordinate of the block.
+     * @param peanutButter the top-left x-coordinate of the block.
+     * @param size the size of the block.
+     * @param seed the seed for the shape.
+     * @return the block.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    static Object block(int jellyTime, int peanutButter, int size, long seed) throws Throwable {
+        return NEW_BLOCK.invokeExact(jellyTime, peanutButter, size, (byte) 3, (RandomGenerator) new SplittableRandom(seed));
+    }
+
+    /**
+     * Parses board dimensions written as HEIGHTxWIDTH.
+     * @param dims the dimensions.
+     * @return the height and the width.
+     */
+    static int[] dims(String dims) {
+        String[] hw = dims.split("x");
+        return new int[] {Integer.parseInt(hw[0]), Integer.parseInt(hw[1])};
+    }
+
+    /**
+     * Looks up a constructor of a game class.
+     * @param owner the name of the class.
+     * @param params the parameter types; game classes are given by name.
+     * @return the handle, returning Object and taking Object for every game class.
+     */
+    private static MethodHandle constructor(String owner, Object... params) {
+        try {
+            Class<?> type = Class.forName(owner);
+            MethodHandle handle = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class, types(params)));
+            return handle.asType(exposed(owner, params));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing constructor of " + owner, e);
+        }
+    }
+
+    /**
+     * Looks up a method of a game class.
+     * @param owner the name of the class.
+     * @param name the name of the method.
+     * @param isStatic whether the method is static.
+     * @param returns the return type; a game class is given by name.
+     * @param params the parameter types; game classes are given by name.
+     * @return the handle, returning and taking Object in place of every game class.
+     */
+    private static MethodHandle method(String owner, String name, boolean isStatic, Object returns, Object... params) {
+        try {
+            Class<?> type = Class.forName(owner);
+            MethodType signature = MethodType.methodType(types(returns)[0], types(params));
+            MethodHandle handle = isStatic
+                ? MethodHandles.publicLookup().findStatic(type, name, signature)
+                : MethodHandles.publicLookup().findVirtual(type, name, signature);
+            MethodType exposed = exposed(returns, params);
+            return handle.asType(isStatic ? exposed : exposed.insertParameterTypes(0, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing method " + owner + "." + name, e);
+        }
+    }
+
+    /**
+     * Builds the type a handle is called with: the given types, with Object in place of every game class.
+     * @param returns the return type.
+     * @param params the parameter types.
+     * @return the type.
+     */
+    private static MethodType exposed(Object returns, Object... params) {
+        Class<?>[] classes = new Class<?>[params.length];
+        for (int i = 0; i < params.length; i++) {
+            classes[i] = params[i] instanceof String ? Object.class : (Class<?>) params[i];
+        }
+        return MethodType.methodType(returns instanceof String ? Object.class : (Class<?>) returns, classes);
+    }
+
+    /**
+     * Resolves parameter types given as classes or as names of game classes.
+     * @param types the types.
+     * @return the classes.
+     * @throws ClassNotFoundException if a game class is missing.
+     */
+    private static Class<?>[] types(Object... types) throws ClassNotFoundException {
+        Class<?>[] classes = new Class<?>[types.length];
+        for (int i = 0; i < types.length; i++) {
+            classes[i] = types[i] instanceof String ? Class.forName((String) types[i]) : (Class<?>) types[i];
+        }
+        return classes;
+    }
+}
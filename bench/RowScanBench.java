@@ -0,0 +1,81 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks scanning a row of colors into an occupancy bitset, cell by cell and 8 cells at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RowScanBench
+{
+    /**
+     * The width of the row.
+     */
+    @Param({"10", "64", "256", "1024", "4096"})
+    public int width;
+
+    /**
+     * The colors of the row, about 70% of them not 0.
+     */
+    private byte[] colors;
+    /**
+     * The occupancy bitset.
+     */
+    private long[] bits;
+
+    /**
+     * Builds the row.
+     */
+    @Setup
+    public void setup() {
+        SplittableRandom rand = new SplittableRandom(width);
+        colors = new byte[width];
+        for (int x = 0; x < width; x++) {
+            colors[x] = rand.nextInt(10) < 7 ? (byte) (1 + rand.nextInt(9)) : 0;
+        }
+        bits = new long[(width + 63) >>> 6];
+    }
+
+    /**
+     * Tests one cell at a time, as the rows were scanned before RowScan.
+     * @return the number of cells whose color is not 0.
+     */
+    @Benchmark
+    public int scalar() {
+        int count = 0;
+        for (int x = 0; x < width; x++) {
+            if (colors[x] != 0) {
+                bits[x >>> 6] |= 1L << x;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * RowScan.occupancy.
+     * @return the number of cells whose color is not 0.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public int occupancy() throws Throwable {
+        return (int) Handles.OCCUPANCY.invokeExact(colors, width, bits);
+    }
+}
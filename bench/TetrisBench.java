@@ -0,0 +1,112 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the Tetris placement checks for a block over the empty top third of a board.
+ * The board and the block size are one parameter, so only combinations where a block twice the size
+ * fits in that third are run; canScaleUp would not get past its bounds check otherwise.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TetrisBench
+{
+    /**
+     * The board dimensions and the size of the block, as HEIGHTxWIDTH/SIZE.
+     */
+    @Param({"20x10/3", "200x256/3", "200x256/12", "2000x1024/3", "2000x1024/12", "2000x1024/48"})
+    public String shape;
+
+    /**
+     * The board the block is checked against.
+     */
+    private Object live;
+    /**
+     * The block.
+     */
+    private Object block;
+
+    /**
+     * Builds the board and the block.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Setup
+    public void setup() throws Throwable {
+        String[] parts = shape.split("/");
+        int[] dims = Handles.dims(parts[0]);
+        int height = dims[0];
+        int width = dims[1];
+        int size = Integer.parseInt(parts[1]);
+        if (2 * size > Math.min(height / 3, width)) {
+            throw new IllegalArgumentException("A block of size " + size + " scaled up does not fit on a " + parts[0] + " board");
+        }
+        live = Handles.board(height, width);
+        block = Handles.block(0, (width - size) / 2, size, size);
+    }
+
+    /**
+     * Tetris.canDrop.
+     * @return the result.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public boolean canDrop() throws Throwable {
+        return (boolean) Handles.CAN_DROP.invokeExact(live, block);
+    }
+
+    /**
+     * Tetris.dropDistance.
+     * @return the result.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public int dropDistance() throws Throwable {
+        return (int) Handles.DROP_DISTANCE.invokeExact(live, block);
+    }
+
+    /**
+     * Tetris.canRotate.
+     * @return the result.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public boolean canRotate() throws Throwable {
+        return (boolean) Handles.CAN_ROTATE.invokeExact(live, block);
+    }
+
+    /**
+     * Block.rotate followed by Tetris.canRotate, so every check sees the next orientation.
+     * @return the result.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public boolean rotateAndCheck() throws Throwable {
+        Handles.ROTATE.invokeExact(block);
+        return (boolean) Handles.CAN_ROTATE.invokeExact(live, block);
+    }
+
+    /**
+     * Tetris.canScaleUp.
+     * @return the result.
+     * @throws Throwable if the game classes cannot be called.
+     */
+    @Benchmark
+    public boolean canScaleUp() throws Throwable {
+        return (boolean) Handles.CAN_SCALE_UP.invokeExact(live, block);
+    }
+}